@@ -9,12 +9,7 @@ import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
@@ -384,28 +379,18 @@ public class HitomiAuthManager {
     }
 
     private JSONObject requestJson(String method, String url, String jsonBody, String bearerToken) throws Exception {
-        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-        conn.setRequestMethod(method);
-        conn.setConnectTimeout(15000);
-        conn.setReadTimeout(30000);
+        HttpURLConnection conn = HttpTransport.openJson(method, url, 15000, 30000);
         conn.setRequestProperty("apikey", BACKEND_PUBLIC_KEY);
-        conn.setRequestProperty("Content-Type", "application/json");
         if (bearerToken != null && !bearerToken.isEmpty()) {
             conn.setRequestProperty("Authorization", "Bearer " + bearerToken);
         }
         if (jsonBody != null) {
-            conn.setDoOutput(true);
-            byte[] bytes = jsonBody.getBytes(StandardCharsets.UTF_8);
-            conn.setFixedLengthStreamingMode(bytes.length);
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(bytes);
-            }
+            HttpTransport.writeBody(conn, jsonBody);
         }
 
         int code = conn.getResponseCode();
-        InputStream stream = code >= 200 && code < 300 ? conn.getInputStream() : conn.getErrorStream();
-        String body = readAll(stream);
-        if (code < 200 || code >= 300) {
+        String body = HttpTransport.readBody(conn, code);
+        if (!HttpTransport.isSuccess(code)) {
             throw new IllegalStateException("Hosted auth failed (" + code + "): " + body);
         }
         return body == null || body.trim().isEmpty() ? new JSONObject() : new JSONObject(body);
@@ -434,6 +419,10 @@ public class HitomiAuthManager {
         return "";
     }
 
+    public String getLocalModel() {
+        return "";
+    }
+
     public void signInWithDirectApiKey(String apiKey) {
         throw new IllegalStateException("Direct API keys are only available in Open Hitomi");
     }
@@ -454,16 +443,6 @@ public class HitomiAuthManager {
         }
     }
 
-    private static String readAll(InputStream stream) throws Exception {
-        if (stream == null) return "";
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = br.readLine()) != null) sb.append(line);
-        }
-        return sb.toString();
-    }
-
     private static long safeLong(String value, long fallback) {
         try {
             return Long.parseLong(value);
@@ -0,0 +1,157 @@
+package ai.agent1c.hitomi;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public final class AndroidToolRegistry {
+    public static final String TOKEN_PREFIX = "{{tool:";
+    public static final String TOKEN_SUFFIX = "}}";
+
+    private final Map<String, ToolHandler> handlers = new HashMap<>();
+
+    public interface ToolHandler {
+        // Upper bound for run(), including any time spent waiting for the serial lane.
+        long timeoutMs();
+
+        // Handlers that share one device resource (the Hitomi Browser WebView) return false
+        // and take turns; everything else runs alongside the other calls from the same reply.
+        boolean runsConcurrently();
+
+        // Returns null to ignore the token, e.g. when a required argument is missing.
+        ToolCall prepare(String name, Map<String, String> args);
+
+        // Called when a reply emits two calls with the same key; returns the one to keep.
+        default ToolCall merge(ToolCall existing, ToolCall incoming) {
+            return existing;
+        }
+
+        // Whether a call may start while the reply is still streaming. Handlers whose merge
+        // keeps a later call must say no, or the early run could act on the wrong one.
+        default boolean startsWhileStreaming() {
+            return true;
+        }
+
+        // Shown in the bubble when the reply had nothing to say besides the tool token.
+        String placeholderText(ToolCall call);
+
+        ToolOutcome run(ToolCall call) throws Exception;
+    }
+
+    public static final class ToolCall {
+        public final ToolHandler handler;
+        public final String name;
+        public final String key;
+        public final Map<String, String> args;
+
+        public ToolCall(ToolHandler handler, String name, String key, Map<String, String> args) {
+            this.handler = handler;
+            this.name = name;
+            this.key = key;
+            this.args = args == null ? Collections.emptyMap() : args;
+        }
+
+        public String arg(String name) {
+            String value = args.get(name);
+            return value == null ? "" : value;
+        }
+    }
+
+    public static final class ToolOutcome {
+        public final String toolResult;
+        public final String directReply;
+
+        private ToolOutcome(String toolResult, String directReply) {
+            this.toolResult = toolResult;
+            this.directReply = directReply;
+        }
+
+        public static ToolOutcome result(String toolResult) {
+            return new ToolOutcome(toolResult, null);
+        }
+
+        public static ToolOutcome reply(String directReply) {
+            return new ToolOutcome(null, directReply);
+        }
+
+        public static ToolOutcome none() {
+            return new ToolOutcome(null, null);
+        }
+    }
+
+    public void register(String name, ToolHandler handler) {
+        handlers.put(name, handler);
+    }
+
+    public ToolHandler get(String name) {
+        return handlers.get(name);
+    }
+
+    // Parses source[start, end), the text between "{{" and "}}", in one pass without regexes.
+    // "tool:name|key=value|key=value"; a '|' only starts a new argument when a key and '='
+    // follow it, so values such as shell pipelines may contain '|'.
+    public ToolCall parseToken(String source, int start, int end) {
+        while (start < end && source.charAt(start) <= ' ') start++;
+        while (end > start && source.charAt(end - 1) <= ' ') end--;
+        if (!source.startsWith("tool:", start)) return null;
+        int pos = start + "tool:".length();
+        int nameEnd = pos;
+        while (nameEnd < end && source.charAt(nameEnd) != '|') nameEnd++;
+        String name = trimmed(source, pos, nameEnd);
+        ToolHandler handler = handlers.get(name);
+        if (handler == null) return null;
+        Map<String, String> args = null;
+        pos = nameEnd;
+        while (pos < end) {
+            int keyStart = pos + 1;
+            int eq = argumentKeyEnd(source, keyStart, end);
+            if (eq < 0) break;
+            int valueEnd = eq + 1;
+            while (valueEnd < end && !(source.charAt(valueEnd) == '|' && argumentKeyEnd(source, valueEnd + 1, end) >= 0)) {
+                valueEnd++;
+            }
+            String key = trimmed(source, keyStart, eq).toLowerCase(Locale.ROOT);
+            if (args == null) args = new LinkedHashMap<>(4);
+            if (!args.containsKey(key)) args.put(key, trimmed(source, eq + 1, valueEnd));
+            pos = valueEnd;
+        }
+        return handler.prepare(name, args);
+    }
+
+    public static void addCall(List<ToolCall> calls, ToolCall call) {
+        if (call == null) return;
+        for (int i = 0; i < calls.size(); i++) {
+            ToolCall existing = calls.get(i);
+            if (existing.handler == call.handler && existing.key.equals(call.key)) {
+                calls.set(i, call.handler.merge(existing, call));
+                return;
+            }
+        }
+        calls.add(call);
+    }
+
+    // Index of the '=' ending an argument key that starts at keyStart, or -1 when the
+    // text there is not "key=".
+    private static int argumentKeyEnd(String source, int keyStart, int end) {
+        int i = keyStart;
+        while (i < end && source.charAt(i) == ' ') i++;
+        int identStart = i;
+        while (i < end) {
+            char c = source.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-')) break;
+            i++;
+        }
+        if (i == identStart) return -1;
+        while (i < end && source.charAt(i) == ' ') i++;
+        return i < end && source.charAt(i) == '=' ? i : -1;
+    }
+
+    private static String trimmed(String source, int start, int end) {
+        while (start < end && source.charAt(start) <= ' ') start++;
+        while (end > start && source.charAt(end - 1) <= ' ') end--;
+        return source.substring(start, end);
+    }
+}
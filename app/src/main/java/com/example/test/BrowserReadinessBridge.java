@@ -0,0 +1,80 @@
+package ai.agent1c.hitomi;
+
+import android.os.Handler;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebView;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Tells the browser read when a page is worth reading. A small script waits for
+// DOMContentLoaded, optionally scrolls, then reports back through a JS interface once the
+// scroll has ended and the DOM has gone QUIET_MS without a mutation. Each wait also has a
+// Java-side upper bound, for pages that never settle (tickers, ads) or navigate away.
+public final class BrowserReadinessBridge {
+    public static final String JS_NAME = "HitomiReadiness";
+    private static final int QUIET_MS = 150;
+
+    // Arguments: token, pixels to scroll by (0 for none), quiet window in ms. A smooth scroll
+    // counts as running until scrollend, or until no scroll event has fired for the quiet
+    // window where scrollend is not supported or the page cannot move.
+    private static final String WATCH_SCRIPT =
+        "(function(token,scrollBy,quietMs){"
+            + "var done=false,quiet=null,scrollIdle=null,scrolling=scrollBy>0,obs=null;"
+            + "function report(){if(done)return;done=true;clearTimeout(quiet);clearTimeout(scrollIdle);"
+            + "try{if(obs)obs.disconnect();}catch(e){}"
+            + "window.removeEventListener('scroll',onScroll,true);window.removeEventListener('scrollend',onScrollEnd,true);"
+            + "try{" + JS_NAME + ".onStable(token);}catch(e){}}"
+            + "function settle(){clearTimeout(quiet);quiet=setTimeout(function(){if(!scrolling)report();},quietMs);}"
+            + "function onScrollEnd(){scrolling=false;clearTimeout(scrollIdle);settle();}"
+            + "function onScroll(){clearTimeout(scrollIdle);scrollIdle=setTimeout(onScrollEnd,quietMs);}"
+            + "function start(){"
+            + "try{obs=new MutationObserver(settle);"
+            + "obs.observe(document.documentElement||document,{childList:true,subtree:true,characterData:true});}catch(e){}"
+            + "if(scrollBy>0){window.addEventListener('scroll',onScroll,true);window.addEventListener('scrollend',onScrollEnd,true);onScroll();"
+            + "try{window.scrollBy({top:scrollBy,behavior:'smooth'});}catch(e){try{window.scrollBy(0,scrollBy);}catch(_){}}}"
+            + "settle();}"
+            + "if(document.readyState==='loading')document.addEventListener('DOMContentLoaded',start);else start();"
+            + "})('%s',%d,%d);";
+
+    private final Handler mainHandler;
+    private final SecureRandom random = new SecureRandom();
+    // Main thread only. Keyed by a random token so a page cannot finish someone else's wait.
+    private final Map<String, Runnable> pending = new HashMap<>();
+
+    public BrowserReadinessBridge(Handler mainHandler) {
+        this.mainHandler = mainHandler;
+    }
+
+    // Takes effect from the next page load.
+    public void install(WebView view) {
+        view.addJavascriptInterface(this, JS_NAME);
+    }
+
+    // Runs onReady on the main thread once the page has parsed, the scroll by scrollByPx (if
+    // any) has ended and the DOM is quiet, or after maxWaitMs, whichever comes first.
+    public void await(WebView view, int scrollByPx, long maxWaitMs, Runnable onReady) {
+        String token = Long.toHexString(random.nextLong());
+        Runnable fire = new Runnable() {
+            @Override
+            public void run() {
+                mainHandler.removeCallbacks(this);
+                if (pending.remove(token) != null) onReady.run();
+            }
+        };
+        pending.put(token, fire);
+        mainHandler.postDelayed(fire, maxWaitMs);
+        view.evaluateJavascript(String.format(Locale.US, WATCH_SCRIPT, token, Math.max(0, scrollByPx), QUIET_MS), null);
+    }
+
+    // Called on the WebView's JS bridge thread.
+    @JavascriptInterface
+    public void onStable(String token) {
+        mainHandler.post(() -> {
+            Runnable fire = pending.get(token);
+            if (fire != null) fire.run();
+        });
+    }
+}
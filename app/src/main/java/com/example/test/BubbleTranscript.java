@@ -0,0 +1,179 @@
+package ai.agent1c.hitomi;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.os.Build;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The chat bubble as a recycled list: one cell per message, plus a status cell at the end for
+// Listening..., the partial speech result, Thinking... or the reply streaming in. ListView only
+// binds the cells on screen, each message keeps its StaticLayout for the width it was last
+// drawn at, and only the newest MAX_MESSAGES are kept, so a long session costs the same to
+// lay out and hold as a short one. The full history stays in the session log.
+public final class BubbleTranscript extends BaseAdapter {
+    private static final int MAX_MESSAGES = 200;
+    private static final float TEXT_SIZE_SP = 12f;
+    private static final int TEXT_COLOR = 0xFF111111;
+    private static final int CELL_GAP_DP = 4;
+
+    private final List<Message> messages = new ArrayList<>();
+    private Message status;
+    private long nextId = 1L;
+    private TextPaint paint;
+    private int cellGapPx;
+
+    private static final class Message {
+        final long id;
+        final String text;
+        StaticLayout layout;
+        int layoutWidth = -1;
+
+        Message(long id, String text) {
+            this.id = id;
+            this.text = text;
+        }
+
+        // Built once per width; scrolling a cell back into view reuses it.
+        StaticLayout layoutFor(int width, TextPaint paint) {
+            if (layout == null || layoutWidth != width) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    layout = StaticLayout.Builder.obtain(text, 0, text.length(), paint, width).build();
+                } else {
+                    layout = new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+                }
+                layoutWidth = width;
+            }
+            return layout;
+        }
+    }
+
+    public void attach(ListView view) {
+        Context context = view.getContext();
+        paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        paint.setColor(TEXT_COLOR);
+        paint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP,
+            context.getResources().getDisplayMetrics()));
+        cellGapPx = Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, CELL_GAP_DP,
+            context.getResources().getDisplayMetrics()));
+        for (Message message : messages) message.layout = null;
+        if (status != null) status.layout = null;
+        view.setAdapter(this);
+    }
+
+    public void reset(String line) {
+        messages.clear();
+        status = null;
+        appendLine(line);
+    }
+
+    public void appendLine(String line) {
+        if (line == null || line.isEmpty()) return;
+        messages.add(new Message(nextId++, line));
+        if (messages.size() > MAX_MESSAGES) messages.subList(0, messages.size() - MAX_MESSAGES).clear();
+        notifyDataSetChanged();
+    }
+
+    // Older lines restored from the session log go in front, oldest first.
+    public void prependLines(List<String> lines) {
+        List<Message> older = new ArrayList<>();
+        for (String line : lines) {
+            if (line != null && !line.isEmpty()) older.add(new Message(nextId++, line));
+        }
+        if (older.isEmpty()) return;
+        int room = MAX_MESSAGES - messages.size();
+        if (room <= 0) return;
+        if (older.size() > room) older = older.subList(older.size() - room, older.size());
+        messages.addAll(0, older);
+        notifyDataSetChanged();
+    }
+
+    // Returns false when the status cell already showed exactly this.
+    public boolean setStatus(String next) {
+        String value = next == null ? "" : next;
+        String current = status == null ? "" : status.text;
+        if (value.equals(current)) return false;
+        // Same id while it stays visible, so the list treats it as the same row being updated.
+        long id = status == null ? nextId++ : status.id;
+        status = value.isEmpty() ? null : new Message(id, value);
+        notifyDataSetChanged();
+        return true;
+    }
+
+    @Override
+    public int getCount() {
+        return messages.size() + (status == null ? 0 : 1);
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return position < messages.size() ? messages.get(position) : status;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return ((Message) getItem(position)).id;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled(int position) {
+        return false;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        MessageCell cell = convertView instanceof MessageCell ? (MessageCell) convertView : new MessageCell(parent.getContext());
+        cell.bind((Message) getItem(position));
+        return cell;
+    }
+
+    private final class MessageCell extends View {
+        private Message message;
+
+        MessageCell(Context context) {
+            super(context);
+            setLayoutParams(new AbsListView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            setPadding(0, cellGapPx, 0, cellGapPx);
+        }
+
+        void bind(Message next) {
+            if (message == next) return;
+            message = next;
+            setContentDescription(next.text);
+            requestLayout();
+            invalidate();
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            int width = MeasureSpec.getSize(widthMeasureSpec);
+            int textWidth = Math.max(1, width - getPaddingLeft() - getPaddingRight());
+            int textHeight = message == null ? 0 : message.layoutFor(textWidth, paint).getHeight();
+            setMeasuredDimension(width, textHeight + getPaddingTop() + getPaddingBottom());
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            if (message == null || message.layout == null) return;
+            canvas.save();
+            canvas.translate(getPaddingLeft(), getPaddingTop());
+            message.layout.draw(canvas);
+            canvas.restore();
+        }
+    }
+}
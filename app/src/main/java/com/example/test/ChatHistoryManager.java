@@ -0,0 +1,203 @@
+package ai.agent1c.hitomi;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ChatHistoryManager {
+    public static final int DEFAULT_TOKEN_BUDGET = 6000;
+    private static final int KEEP_VERBATIM_TURNS = 2;
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+    private static final String COMPACTED_NOTE = "(older tool output dropped from history to save context)";
+
+    private final List<Entry> entries = new ArrayList<>();
+    private int tokenBudget;
+    private int totalTokens = 0;
+    private SessionLog sessionLog;
+
+    private static final class Entry {
+        final String role;
+        final boolean toolResult;
+        String content;
+        int tokens;
+        boolean compacted;
+
+        Entry(String role, String content, boolean toolResult) {
+            this.role = role;
+            this.toolResult = toolResult;
+            this.content = content == null ? "" : content;
+            this.tokens = estimateTokens(this.content);
+        }
+    }
+
+    public ChatHistoryManager() {
+        this(DEFAULT_TOKEN_BUDGET);
+    }
+
+    public ChatHistoryManager(int tokenBudget) {
+        this.tokenBudget = Math.max(256, tokenBudget);
+    }
+
+    public synchronized void setTokenBudget(int tokenBudget) {
+        this.tokenBudget = Math.max(256, tokenBudget);
+        compact();
+    }
+
+    public synchronized void setSessionLog(SessionLog sessionLog) {
+        this.sessionLog = sessionLog;
+    }
+
+    public synchronized int getTokenBudget() {
+        return tokenBudget;
+    }
+
+    public synchronized int estimatedTokens() {
+        return totalTokens;
+    }
+
+    public synchronized void addUser(String content) {
+        add(new Entry("user", content, false));
+    }
+
+    public synchronized void addAssistant(String content) {
+        add(new Entry("assistant", content, false));
+    }
+
+    // Tool results travel as user messages but are the first thing to shrink when over budget.
+    public synchronized void addToolResult(String content) {
+        add(new Entry("user", content, true));
+    }
+
+    public synchronized JSONArray toJsonArray() {
+        JSONArray out = new JSONArray();
+        for (Entry entry : entries) {
+            try {
+                out.put(new JSONObject().put("role", entry.role).put("content", entry.content));
+            } catch (Exception ignored) {
+            }
+        }
+        return out;
+    }
+
+    // Puts messages replayed from the session log in front of anything added since startup.
+    public synchronized void restore(List<SessionLog.Record> records) {
+        List<Entry> restored = new ArrayList<>();
+        for (SessionLog.Record record : records) {
+            if (record.type == SessionLog.TYPE_HISTORY_USER) {
+                restored.add(new Entry("user", record.text, false));
+            } else if (record.type == SessionLog.TYPE_HISTORY_ASSISTANT) {
+                restored.add(new Entry("assistant", record.text, false));
+            } else if (record.type == SessionLog.TYPE_HISTORY_TOOL) {
+                restored.add(new Entry("user", record.text, true));
+            }
+        }
+        while (!restored.isEmpty() && !isTurnStart(restored.get(0))) restored.remove(0);
+        for (Entry entry : restored) totalTokens += entry.tokens;
+        entries.addAll(0, restored);
+        compact();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalTokens = 0;
+    }
+
+    private void add(Entry entry) {
+        if (sessionLog != null) {
+            byte type = entry.toolResult
+                ? SessionLog.TYPE_HISTORY_TOOL
+                : "user".equals(entry.role) ? SessionLog.TYPE_HISTORY_USER : SessionLog.TYPE_HISTORY_ASSISTANT;
+            sessionLog.append(type, entry.content);
+        }
+        entries.add(entry);
+        totalTokens += entry.tokens;
+        compact();
+    }
+
+    private void compact() {
+        if (totalTokens <= tokenBudget) return;
+        int verbatimFrom = turnStartFromEnd(KEEP_VERBATIM_TURNS);
+        compactToolResults(0, verbatimFrom);
+        // Still over: drop whole turns from the front so history keeps starting at a user message.
+        while (totalTokens > tokenBudget && verbatimFrom > 0) {
+            int dropEnd = 1;
+            while (dropEnd < verbatimFrom && !isTurnStart(entries.get(dropEnd))) dropEnd++;
+            for (int i = 0; i < dropEnd; i++) {
+                totalTokens -= entries.remove(0).tokens;
+            }
+            verbatimFrom -= dropEnd;
+        }
+        // Only the recent turns are left; the newest one always goes out untouched.
+        compactToolResults(0, turnStartFromEnd(1));
+    }
+
+    private void compactToolResults(int from, int to) {
+        for (int i = from; i < to && totalTokens > tokenBudget; i++) {
+            Entry entry = entries.get(i);
+            if (!entry.toolResult || entry.compacted) continue;
+            String summary = summarizeToolResult(entry.content);
+            totalTokens -= entry.tokens;
+            entry.content = summary;
+            entry.tokens = estimateTokens(summary);
+            entry.compacted = true;
+            totalTokens += entry.tokens;
+        }
+    }
+
+    // Index of the user message that starts the n-th newest turn, or 0 if there are fewer turns.
+    private int turnStartFromEnd(int turns) {
+        int seen = 0;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (isTurnStart(entries.get(i)) && ++seen == turns) return i;
+        }
+        return 0;
+    }
+
+    private static boolean isTurnStart(Entry entry) {
+        return "user".equals(entry.role) && !entry.toolResult;
+    }
+
+    // Keeps each tool block's tags and short header fields (URL, Command, Exit code, Balance...)
+    // and drops the bulky section that follows them, e.g. the page excerpt or STDOUT.
+    static String summarizeToolResult(String content) {
+        StringBuilder out = new StringBuilder();
+        boolean inBlock = false;
+        boolean inHeader = false;
+        for (String line : content.split("\n")) {
+            String trimmed = line.trim();
+            boolean tag = trimmed.startsWith("[") && trimmed.endsWith("]") && trimmed.indexOf(' ') < 0;
+            if (tag && trimmed.startsWith("[/")) {
+                if (inBlock) {
+                    out.append(COMPACTED_NOTE).append('\n').append(trimmed).append('\n');
+                }
+                inBlock = false;
+                inHeader = false;
+            } else if (tag) {
+                out.append(trimmed).append('\n');
+                inBlock = true;
+                inHeader = true;
+            } else if (inHeader) {
+                if (trimmed.endsWith(":") || trimmed.length() > 200) {
+                    inHeader = false;
+                } else if (!trimmed.isEmpty()) {
+                    out.append(trimmed).append('\n');
+                }
+            }
+        }
+        if (out.length() == 0) return COMPACTED_NOTE;
+        return out.toString().trim();
+    }
+
+    // Rough count: about four ASCII characters per token, one token per other character.
+    static int estimateTokens(String text) {
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) ascii++;
+            else other++;
+        }
+        return MESSAGE_OVERHEAD_TOKENS + (ascii + 3) / 4 + other;
+    }
+}
@@ -23,6 +23,7 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.animation.ValueAnimator;
+import android.text.Editable;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -37,9 +38,11 @@ import android.speech.RecognizerIntent;
 import android.speech.SpeechRecognizer;
 import android.os.Bundle;
 import android.util.Log;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.ListView;
 import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -51,12 +54,22 @@ import androidx.core.content.ContextCompat;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class HedgehogOverlayService extends Service {
     private static final String TAG = "HitomiOverlay";
@@ -79,11 +92,21 @@ public class HedgehogOverlayService extends Service {
     private static final int EXIT_TARGET_SIZE_DP = 76;
     private static final int EXIT_TARGET_MARGIN_BOTTOM_DP = 18;
     private static final int TERMINAL_TRANSCRIPT_MAX_CHARS = 12000;
+    private static final long TERMINAL_STREAM_FLUSH_MS = 50L;
+    private static final String SESSION_LOG_FILE = "hitomi_session.log";
+    private static final int RESTORED_TRANSCRIPT_LINES = 40;
+    private static final long STREAM_PREVIEW_RENDER_MS = 60L;
+    // Upper bounds for a browser read to wait on the page settling; most pages report sooner.
+    private static final long BROWSER_READ_SETTLE_MAX_MS = 1500L;
+    private static final long BROWSER_SCROLL_SETTLE_MAX_MS = 700L;
     private static final String ANDROID_BROWSER_TOOL_NAME = "android_browser_open";
     private static final String ANDROID_BROWSER_BROWSE_TOOL_NAME = "android_browser_browse";
     private static final String ANDROID_TERMUX_EXEC_TOOL_NAME = "android_termux_exec";
     private static final String ANDROID_SOLANA_OVERVIEW_TOOL_NAME = "android_solana_wallet_overview";
     private static final String ANDROID_SOLANA_REFRESH_TOOL_NAME = "android_solana_wallet_refresh";
+    private static final String ANDROID_SOLANA_HISTORY_TOOL_NAME = "android_solana_wallet_history";
+    private static final int SOLANA_HISTORY_PAGE_SIZE = 20;
+    private static final int MAX_TOOL_CALLS_PER_REPLY = 6;
 
     private WindowManager windowManager;
     private View hedgehogView;
@@ -110,26 +133,41 @@ public class HedgehogOverlayService extends Service {
     private boolean dragOverExitTarget = false;
     private Runnable browserSummonParticlesStop;
     private final ExecutorService chatExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService toolExecutor = Executors.newCachedThreadPool();
+    private final ReentrantLock serialToolLock = new ReentrantLock(true);
+    private final AndroidToolRegistry toolRegistry = buildToolRegistry();
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
-    private final JSONArray chatHistory = new JSONArray();
+    private final ChatHistoryManager chatHistory = new ChatHistoryManager(ChatHistoryManager.DEFAULT_TOKEN_BUDGET);
     private HitomiCloudChatClient chatClient;
-    private TextView bubbleBodyView;
+    private ListView bubbleBodyView;
     private TextView browserUrlView;
     private TextView terminalStatusView;
     private TextView terminalTranscriptView;
     private EditText solanaWalletNameInput;
     private EditText solanaWalletAddressInput;
     private TextView solanaStatusView;
-    private ScrollView bubbleBodyScrollView;
     private ScrollView terminalScrollView;
     private View bubbleTailTopView;
     private View bubbleTailBottomView;
     private EditText bubbleInputView;
     private ImageButton bubbleSendButton;
     private WebView hitomiBrowserWebView;
+    private BrowserReadinessBridge browserReadiness;
     private boolean chatInFlight = false;
-    private String transcript = "";
-    private String terminalTranscript = "";
+    private final AtomicInteger chatTurnSeq = new AtomicInteger(0);
+    // Main thread only; the request of the latest chat turn.
+    private HitomiCloudChatClient.Cancellation chatCancellation;
+    private final BubbleTranscript transcript = new BubbleTranscript();
+    private volatile String streamingReplyPreview = "";
+    private final AtomicBoolean streamPreviewRenderQueued = new AtomicBoolean(false);
+    private final Runnable streamPreviewRenderRunnable = () -> {
+        streamPreviewRenderQueued.set(false);
+        if (chatInFlight) renderTranscript(true);
+    };
+    private final TerminalTranscriptBuffer terminalTranscript = new TerminalTranscriptBuffer(TERMINAL_TRANSCRIPT_MAX_CHARS);
+    private final StringBuilder pendingTerminalOutput = new StringBuilder();
+    private boolean terminalFlushPosted = false;
+    private SessionLog sessionLog;
     private boolean keyboardLiftActive = false;
     private int keyboardLiftOriginalY = -1;
     private boolean hedgehogDragging = false;
@@ -159,6 +197,7 @@ public class HedgehogOverlayService extends Service {
     private int hiddenRestoreY = -1;
     private BrowserReadRequest pendingBrowserReadRequest;
     private TermuxCommandBridge termuxCommandBridge;
+    private TermuxSession termuxSession;
     private SolanaWalletClient solanaWalletClient;
     private String pendingWalletPrompt = "";
     private float browserReadParticleProgress = 0f;
@@ -174,6 +213,12 @@ public class HedgehogOverlayService extends Service {
         return overlayRunning;
     }
 
+    // For sign-out while the overlay is not running; a running overlay is sent ACTION_STOP.
+    public static void deleteSessionLog(Context context) {
+        File file = new File(context.getFilesDir(), SESSION_LOG_FILE);
+        if (file.exists() && !file.delete()) Log.w(TAG, "could not delete " + file);
+    }
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
@@ -184,13 +229,14 @@ public class HedgehogOverlayService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         String action = intent != null ? intent.getAction() : ACTION_START;
         if (ACTION_STOP.equals(action)) {
-            overlayRunning = false;
-            stopSelf();
+            endSession();
             return START_NOT_STICKY;
         }
         createNotificationChannel();
         startForeground(NOTIF_ID, buildNotification());
-        ensureOverlay();
+        // A null intent means Android restarted the sticky service after killing it; only
+        // then does the last session come back. A start from the app begins a fresh one.
+        ensureOverlay(intent == null);
         overlayRunning = true;
         return START_STICKY;
     }
@@ -207,6 +253,9 @@ public class HedgehogOverlayService extends Service {
         overlayRunning = false;
         stopSpeechLoop(true);
         chatExecutor.shutdownNow();
+        toolExecutor.shutdownNow();
+        if (sessionLog != null) sessionLog.close();
+        if (solanaWalletClient != null) solanaWalletClient.stopLiveUpdates();
         if (windowManager != null) {
             if (hedgehogView != null) {
                 try { windowManager.removeView(hedgehogView); } catch (Exception ignored) {}
@@ -239,13 +288,21 @@ public class HedgehogOverlayService extends Service {
                 hitomiBrowserWebView.destroy();
             } catch (Exception ignored) {}
         }
-        if (termuxCommandBridge != null) {
-            try { termuxCommandBridge.shutdown(); } catch (Exception ignored) {}
+        TermuxSession session;
+        TermuxCommandBridge bridge;
+        synchronized (this) {
+            session = termuxSession;
+            bridge = termuxCommandBridge;
+            termuxSession = null;
             termuxCommandBridge = null;
         }
+        if (session != null) session.close();
+        if (bridge != null) {
+            try { bridge.shutdown(); } catch (Exception ignored) {}
+        }
     }
 
-    private void ensureOverlay() {
+    private void ensureOverlay(boolean restoreSession) {
         if (windowManager == null) {
             windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
         }
@@ -384,22 +441,87 @@ public class HedgehogOverlayService extends Service {
         exitTargetVisible = false;
         dragOverExitTarget = false;
         chatClient = new HitomiCloudChatClient(this);
-        termuxCommandBridge = new TermuxCommandBridge(this);
+        sessionLog = new SessionLog(new File(getFilesDir(), SESSION_LOG_FILE));
+        chatHistory.setSessionLog(sessionLog);
+        // Termux tool calls run on toolExecutor threads; they read these under the same monitor.
+        synchronized (this) {
+            termuxCommandBridge = new TermuxCommandBridge(this);
+        }
         solanaWalletClient = new SolanaWalletClient(this);
+        solanaWalletClient.setSnapshotListener(this::onSolanaSnapshotUpdated);
+        solanaWalletClient.startLiveUpdates();
         initSpeechRecognizer();
         HitomiAuthManager auth = new HitomiAuthManager(this);
         if (auth.isSignedIn()) {
             String display = String.valueOf(auth.getDisplayName() == null ? "" : auth.getDisplayName()).trim();
             String helloName = display.isEmpty() ? "friend" : display;
             if (helloName.startsWith("@") && helloName.length() > 1) {
-                transcript = "Hitomi: I'm a hedgey-hog! Hello " + helloName + ", I can browse, use Termux commands, and see Solana addresses for you!\nLong-press on me for other options!";
+                transcript.reset("Hitomi: I'm a hedgey-hog! Hello " + helloName + ", I can browse, use Termux commands, and see Solana addresses for you!\nLong-press on me for other options!");
             } else {
-                transcript = "Hitomi: I'm a hedgey-hog! Hello " + helloName + ", I can browse, use Termux commands, and see Solana addresses for you!\nLong-press on me for other options!";
+                transcript.reset("Hitomi: I'm a hedgey-hog! Hello " + helloName + ", I can browse, use Termux commands, and see Solana addresses for you!\nLong-press on me for other options!");
             }
         } else {
-            transcript = "Hitomi: Hi! I'm Hitomi, your tiny hedgehog friend. Sign in in the app, then we can chat here.";
+            transcript.reset("Hitomi: Hi! I'm Hitomi, your tiny hedgehog friend. Sign in in the app, then we can chat here.");
         }
         renderTranscript(false);
+        if (restoreSession) restoreSessionFromLog();
+        else sessionLog.clear();
+    }
+
+    // The user closed the overlay, so its chat is not restored on the next start.
+    private void endSession() {
+        overlayRunning = false;
+        chatHistory.clear();
+        if (sessionLog != null) sessionLog.delete();
+        else deleteSessionLog(this);
+        stopSelf();
+    }
+
+    private void restoreSessionFromLog() {
+        SessionLog log = sessionLog;
+        if (log == null) return;
+        // Queued ahead of any send so the first message already carries the restored context.
+        chatExecutor.execute(() -> {
+            List<String> lines = new ArrayList<>();
+            List<String> blocks = new ArrayList<>();
+            List<SessionLog.Record> history = new ArrayList<>();
+            int historyTokenLimit = chatHistory.getTokenBudget() * 2;
+            final int[] terminalChars = new int[]{0};
+            final int[] historyTokens = new int[]{0};
+            log.loadTail((type, text) -> {
+                if (type == SessionLog.TYPE_TRANSCRIPT) {
+                    if (lines.size() < RESTORED_TRANSCRIPT_LINES) lines.add(0, text);
+                } else if (type == SessionLog.TYPE_TERMINAL) {
+                    if (terminalChars[0] < TERMINAL_TRANSCRIPT_MAX_CHARS) {
+                        blocks.add(0, text);
+                        terminalChars[0] += text.length() + 2;
+                    }
+                } else if (historyTokens[0] < historyTokenLimit) {
+                    history.add(0, new SessionLog.Record(type, text));
+                    historyTokens[0] += ChatHistoryManager.estimateTokens(text);
+                }
+                // Keep going while any kind is short; SessionLog caps the walk in bytes, so a
+                // log without terminal records is not read to the start.
+                return lines.size() < RESTORED_TRANSCRIPT_LINES
+                    || terminalChars[0] < TERMINAL_TRANSCRIPT_MAX_CHARS
+                    || historyTokens[0] < historyTokenLimit;
+            });
+            chatHistory.restore(history);
+            if (lines.isEmpty() && blocks.isEmpty()) return;
+            String restoredTerminal = String.join("\n\n", blocks);
+            mainHandler.post(() -> {
+                if (!lines.isEmpty()) {
+                    transcript.prependLines(lines);
+                    renderTranscript(chatInFlight);
+                }
+                if (!restoredTerminal.isEmpty()) {
+                    String current = terminalTranscript.toString().trim();
+                    terminalTranscript.clear();
+                    terminalTranscript.append(current.isEmpty() ? restoredTerminal : restoredTerminal + "\n\n" + current);
+                    renderTerminalTranscript();
+                }
+            });
+        });
     }
 
     private void refreshOverlayPositionsForViewportChange() {
@@ -471,7 +593,17 @@ public class HedgehogOverlayService extends Service {
             ws.setDomStorageEnabled(true);
             ws.setLoadsImagesAutomatically(true);
             ws.setBuiltInZoomControls(false);
+            browserReadiness = new BrowserReadinessBridge(mainHandler);
+            browserReadiness.install(hitomiBrowserWebView);
             hitomiBrowserWebView.setWebViewClient(new WebViewClient() {
+                // API 23+: the new document exists, so the read can start at DOMContentLoaded
+                // instead of waiting for every image and frame behind onPageFinished.
+                @Override
+                public void onPageCommitVisible(WebView view, String url) {
+                    super.onPageCommitVisible(view, url);
+                    maybeResolvePendingBrowserRead(view, url);
+                }
+
                 @Override
                 public void onPageFinished(WebView view, String url) {
                     super.onPageFinished(view, url);
@@ -493,8 +625,13 @@ public class HedgehogOverlayService extends Service {
         ImageButton close = solanaView.findViewById(R.id.hitomiSolanaClose);
         View dragHandle = solanaView.findViewById(R.id.hitomiSolanaTitlePill);
         View save = solanaView.findViewById(R.id.hitomiSolanaSave);
+        CheckBox liveUpdates = solanaView.findViewById(R.id.hitomiSolanaLiveUpdates);
         if (title != null) title.setText("Solana");
         populateStoredSolanaWalletIntoWindow();
+        if (liveUpdates != null) {
+            liveUpdates.setChecked(solanaWalletClient.isLiveUpdatesEnabled());
+            liveUpdates.setOnCheckedChangeListener((button, checked) -> solanaWalletClient.setLiveUpdatesEnabled(checked));
+        }
         if (close != null) close.setOnClickListener(v -> {
             solanaVisible = false;
             solanaView.setVisibility(View.GONE);
@@ -673,6 +810,7 @@ public class HedgehogOverlayService extends Service {
             return;
         }
         solanaWalletClient.saveStoredWallet(walletName, walletAddress);
+        solanaWalletClient.startLiveUpdates();
         if (solanaStatusView != null) {
             solanaStatusView.setText("Saved locally. Hitomi can use this wallet for read-only checks now.");
         }
@@ -805,11 +943,11 @@ public class HedgehogOverlayService extends Service {
     private void maybeResolvePendingBrowserRead(WebView view, String finishedUrl) {
         BrowserReadRequest req = pendingBrowserReadRequest;
         if (req == null || view == null) return;
-        // Resolve on first finished page after request; redirects are fine.
+        // Resolve on the first page committed or finished after the request; redirects are fine.
         pendingBrowserReadRequest = null;
         if (req.timeoutRunnable != null) mainHandler.removeCallbacks(req.timeoutRunnable);
         BrowserReadAccumulator acc = new BrowserReadAccumulator(finishedUrl, req.callback);
-        mainHandler.postDelayed(() -> runBrowserReadStep(view, 0, acc), 450);
+        browserReadiness.await(view, 0, BROWSER_READ_SETTLE_MAX_MS, () -> runBrowserReadStep(view, 0, acc));
     }
 
     private void runBrowserReadStep(WebView view, int stepIndex, BrowserReadAccumulator acc) {
@@ -836,10 +974,9 @@ public class HedgehogOverlayService extends Service {
                 acc.callback.onSnapshot(acc.toBrowserSnapshot());
                 return;
             }
-            int scrollBy = step.recommendedScrollAmountPx();
-            String scrollJs = "(function(){try{window.scrollBy({top:" + scrollBy + ",behavior:'smooth'});}catch(e){try{window.scrollBy(0," + scrollBy + ");}catch(_){}}})();";
-            view.evaluateJavascript(scrollJs, null);
-            mainHandler.postDelayed(() -> runBrowserReadStep(view, stepIndex + 1, acc), 700);
+            // Next step once the scroll has ended and lazy content has stopped arriving.
+            browserReadiness.await(view, step.recommendedScrollAmountPx(), BROWSER_SCROLL_SETTLE_MAX_MS,
+                () -> runBrowserReadStep(view, stepIndex + 1, acc));
         });
     }
 
@@ -983,13 +1120,16 @@ public class HedgehogOverlayService extends Service {
         });
     }
 
+    // Full resync of the view from the buffer; only for setup and session restore. Everything
+    // else goes through appendTerminalText, which edits the view's Editable in place.
     private void renderTerminalTranscript() {
         if (terminalTranscriptView != null) {
-            String text = terminalTranscript == null ? "" : terminalTranscript.trim();
-            terminalTranscriptView.setText(text.isEmpty()
-                ? "Hitomi's Termux activity will appear here."
-                : text);
+            terminalTranscriptView.setText(terminalTranscript, TextView.BufferType.EDITABLE);
         }
+        scrollTerminalToEnd();
+    }
+
+    private void scrollTerminalToEnd() {
         if (terminalScrollView != null) {
             terminalScrollView.post(() -> terminalScrollView.fullScroll(View.FOCUS_DOWN));
         }
@@ -998,19 +1138,49 @@ public class HedgehogOverlayService extends Service {
     private void appendTerminalBlock(String block) {
         String trimmed = block == null ? "" : block.trim();
         if (trimmed.isEmpty()) return;
-        if (terminalTranscript == null || terminalTranscript.trim().isEmpty()) {
-            terminalTranscript = trimmed;
-        } else {
-            terminalTranscript = terminalTranscript.trim() + "\n\n" + trimmed;
-        }
-        if (terminalTranscript.length() > TERMINAL_TRANSCRIPT_MAX_CHARS) {
-            terminalTranscript = terminalTranscript.substring(terminalTranscript.length() - TERMINAL_TRANSCRIPT_MAX_CHARS);
-            int firstBreak = terminalTranscript.indexOf('\n');
-            if (firstBreak > 0 && firstBreak < terminalTranscript.length() - 1) {
-                terminalTranscript = terminalTranscript.substring(firstBreak + 1).trim();
-            }
+        if (sessionLog != null) sessionLog.append(SessionLog.TYPE_TERMINAL, trimmed);
+        String separator = terminalTranscript.isEmpty() ? "" : "\n\n".substring(terminalTranscript.trailingNewlines(2));
+        appendTerminalText(separator + trimmed);
+    }
+
+    // Called from tool threads while a session command runs; chunks are batched so a chatty
+    // command costs one transcript update per TERMINAL_STREAM_FLUSH_MS.
+    private void streamTerminalOutput(String text) {
+        synchronized (pendingTerminalOutput) {
+            pendingTerminalOutput.append(text);
+            if (terminalFlushPosted) return;
+            terminalFlushPosted = true;
+        }
+        mainHandler.postDelayed(this::flushTerminalOutput, TERMINAL_STREAM_FLUSH_MS);
+    }
+
+    private void flushTerminalOutput() {
+        String text;
+        synchronized (pendingTerminalOutput) {
+            text = pendingTerminalOutput.toString();
+            pendingTerminalOutput.setLength(0);
+            terminalFlushPosted = false;
+        }
+        if (text.isEmpty()) return;
+        showTerminalWindow(!terminalVisible);
+        // Raw output: the "$ command" block before it ends without a newline.
+        boolean needsBreak = !terminalTranscript.isEmpty() && terminalTranscript.trailingNewlines(1) == 0;
+        appendTerminalText(needsBreak ? "\n" + text : text);
+    }
+
+    // Appends to the buffer and mirrors the same edit on the view: append at the tail, delete
+    // whatever the buffer dropped at the head. No full setText, so only the touched lines relayout.
+    private void appendTerminalText(String text) {
+        int before = terminalTranscript.length();
+        int dropped = terminalTranscript.append(text);
+        Editable shown = terminalTranscriptView == null ? null : terminalTranscriptView.getEditableText();
+        if (shown == null || dropped >= before || shown.length() != before) {
+            renderTerminalTranscript();
+            return;
         }
-        renderTerminalTranscript();
+        shown.append(text);
+        if (dropped > 0) shown.delete(0, dropped);
+        scrollTerminalToEnd();
     }
 
     private void setTerminalStatus(String status) {
@@ -1043,8 +1213,11 @@ public class HedgehogOverlayService extends Service {
         });
     }
 
-    private void noteTermuxResult(String command, TermuxCommandBridge.Result result) {
+    // streamed: the output already reached the transcript chunk by chunk, so only the
+    // outcome lines are added here.
+    private void noteTermuxResult(String command, TermuxCommandBridge.Result result, boolean streamed) {
         mainHandler.post(() -> {
+            flushTerminalOutput();
             showTerminalWindow(!terminalVisible);
             if (result == null) {
                 setTerminalStatus("No Termux result");
@@ -1067,6 +1240,12 @@ public class HedgehogOverlayService extends Service {
                 if (sb.length() > 0) sb.append("\n");
                 sb.append(stderr);
             }
+            boolean hadOutput = sb.length() > 0;
+            if (streamed) {
+                // Already on screen as it arrived; only the log still needs it.
+                if (sessionLog != null && hadOutput) sessionLog.append(SessionLog.TYPE_TERMINAL, sb.toString());
+                sb.setLength(0);
+            }
             if (!errMsg.isEmpty()) {
                 if (sb.length() > 0) sb.append("\n");
                 sb.append(errMsg);
@@ -1080,6 +1259,7 @@ public class HedgehogOverlayService extends Service {
                 sb.append("exit ").append(result.exitCode);
             }
             if (sb.length() == 0) {
+                if (hadOutput) return;
                 sb.append("(no output)");
             }
             appendTerminalBlock(sb.toString());
@@ -1206,8 +1386,8 @@ public class HedgehogOverlayService extends Service {
     }
 
     private void setupBubbleUi() {
-        bubbleBodyScrollView = bubbleView.findViewById(R.id.hitomiBubbleBodyScroll);
         bubbleBodyView = bubbleView.findViewById(R.id.hitomiBubbleBody);
+        transcript.attach(bubbleBodyView);
         bubbleTailTopView = bubbleView.findViewById(R.id.hitomiBubbleTailTop);
         bubbleTailBottomView = bubbleView.findViewById(R.id.hitomiBubbleTailBottom);
         bubbleInputView = bubbleView.findViewById(R.id.hitomiBubbleInput);
@@ -1693,8 +1873,7 @@ public class HedgehogOverlayService extends Service {
                     showExitTarget(false);
                     updateExitTargetHotState(false);
                     if (droppedOnExit) {
-                        overlayRunning = false;
-                        stopSelf();
+                        endSession();
                         return true;
                     }
                     if (longPressed[0]) return true;
@@ -1921,7 +2100,7 @@ public class HedgehogOverlayService extends Service {
     }
 
     private void sendChatMessage() {
-        if (chatInFlight || bubbleInputView == null) return;
+        if (bubbleInputView == null) return;
         String msg = bubbleInputView.getText().toString().trim();
         if (msg.isEmpty()) return;
         bubbleInputView.setText("");
@@ -1934,11 +2113,38 @@ public class HedgehogOverlayService extends Service {
             return;
         }
         scheduleKeyboardAvoidanceHop();
+        final int turnId = chatTurnSeq.incrementAndGet();
+        if (chatInFlight) {
+            // A newer message interrupts the reply that is still streaming in.
+            String interrupted = streamingReplyPreview;
+            if (interrupted != null && !interrupted.isEmpty()) {
+                appendTranscriptLine("Hitomi: " + interrupted + " ...");
+            }
+        }
+        // Also covers a turn still resolving the model or connecting, before any stream exists.
+        if (chatCancellation != null) chatCancellation.cancel();
+        final HitomiCloudChatClient.Cancellation cancel = new HitomiCloudChatClient.Cancellation();
+        chatCancellation = cancel;
         appendTranscriptLine("You: " + msg);
         chatInFlight = true;
+        streamingReplyPreview = "";
         renderTranscript(true);
-        if (bubbleSendButton != null) bubbleSendButton.setEnabled(false);
 
+        final String[] lastPartial = new String[]{""};
+        final boolean[] firstReplyDone = new boolean[]{false};
+        final ToolRunSet toolRuns = new ToolRunSet();
+        // A superseded turn stops waiting on its tools too, so the next message is not queued
+        // behind a Termux command or page read whose result nobody will see.
+        cancel.onCancel(toolRuns::cancelAll);
+        final ToolTokenStreamParser toolTokenParser = new ToolTokenStreamParser(toolRegistry, call -> {
+            // Start page loads and shell commands while the model is still writing its prose.
+            if (isCurrentChatTurn(turnId) && call.handler.startsWhileStreaming()) toolRuns.start(call);
+        });
+        final HitomiCloudChatClient.StreamListener streamListener = textSoFar -> {
+            lastPartial[0] = textSoFar;
+            if (!firstReplyDone[0]) toolTokenParser.feed(textSoFar);
+            if (isCurrentChatTurn(turnId)) onStreamPartial(textSoFar);
+        };
         chatExecutor.execute(() -> {
             String reply;
             String userName = "friend";
@@ -1946,62 +2152,39 @@ public class HedgehogOverlayService extends Service {
                 HitomiAuthManager auth = new HitomiAuthManager(this);
                 String resolved = auth.getDisplayName();
                 if (resolved != null && !resolved.trim().isEmpty()) userName = resolved.trim();
-                chatHistory.put(new JSONObject().put("role", "user").put("content", msg));
-                reply = chatClient.send(chatHistory, userName);
+                chatHistory.addUser(msg);
+                reply = chatClient.send(chatHistory.toJsonArray(), userName, streamListener, cancel);
+            } catch (CancellationException e) {
+                reply = null;
             } catch (Exception e) {
                 reply = "I hit a snag: " + safeMessage(e);
             }
-            final ParsedAssistantReply parsedReply = parseAssistantReply(reply);
-            try {
-                chatHistory.put(new JSONObject().put("role", "assistant").put("content", parsedReply.visibleText));
-            } catch (Exception ignored) {
+            firstReplyDone[0] = true;
+            if (reply == null || !isCurrentChatTurn(turnId)) {
+                // Superseded: the newer turn already showed what had streamed in, so history
+                // gets the same cut-off text rather than a reply nobody saw.
+                toolRuns.cancelAll();
+                String partial = stripToolTokensForPreview(lastPartial[0]);
+                if (!partial.isEmpty()) chatHistory.addAssistant(partial + " ...");
+                return;
             }
+            final ParsedAssistantReply parsedReply = parseAssistantReply(reply);
+            chatHistory.addAssistant(parsedReply.visibleText);
             final String finalUserName = userName;
             mainHandler.post(() -> {
-                if (parsedReply.browserUrl != null && !parsedReply.browserUrl.isEmpty()) {
-                    showHitomiBrowserForUrl(parsedReply.browserUrl);
-                }
+                if (!isCurrentChatTurn(turnId)) return;
+                streamingReplyPreview = "";
                 appendTranscriptLine("Hitomi: " + parsedReply.visibleText);
                 renderTranscript(true);
             });
-            if (parsedReply.browserReadUrl != null && !parsedReply.browserReadUrl.isEmpty()) {
-                String followup = runBrowserReadFollowup(finalUserName, parsedReply.browserReadUrl);
-                if (followup != null && !followup.trim().isEmpty()) {
-                    try {
-                        chatHistory.put(new JSONObject().put("role", "assistant").put("content", followup));
-                    } catch (Exception ignored) {
-                    }
-                    final String visibleFollowup = followup.trim();
-                    mainHandler.post(() -> appendTranscriptLine("Hitomi: " + visibleFollowup));
-                }
-            }
-            if (parsedReply.termuxCommand != null && !parsedReply.termuxCommand.isEmpty()) {
-                String followup = runTermuxCommandFollowup(finalUserName, parsedReply.termuxCommand);
-                if (followup != null && !followup.trim().isEmpty()) {
-                    try {
-                        chatHistory.put(new JSONObject().put("role", "assistant").put("content", followup));
-                    } catch (Exception ignored) {
-                    }
-                    final String visibleFollowup = followup.trim();
-                    mainHandler.post(() -> appendTranscriptLine("Hitomi: " + visibleFollowup));
-                }
-            }
-            if (parsedReply.solanaToolName != null && !parsedReply.solanaToolName.isEmpty()) {
-                boolean forceRefresh = ANDROID_SOLANA_REFRESH_TOOL_NAME.equals(parsedReply.solanaToolName);
-                String followup = runSolanaWalletFollowup(finalUserName, forceRefresh);
-                if (followup != null && !followup.trim().isEmpty()) {
-                    try {
-                        chatHistory.put(new JSONObject().put("role", "assistant").put("content", followup));
-                    } catch (Exception ignored) {
-                    }
-                    final String visibleFollowup = followup.trim();
-                    mainHandler.post(() -> appendTranscriptLine("Hitomi: " + visibleFollowup));
-                }
+            if (isCurrentChatTurn(turnId) && !parsedReply.toolCalls.isEmpty()) {
+                runToolCallsAndFollowup(finalUserName, parsedReply, turnId, toolRuns, streamListener, cancel);
             }
+            toolRuns.cancelAll();
             mainHandler.post(() -> {
+                if (!isCurrentChatTurn(turnId)) return;
                 chatInFlight = false;
                 renderTranscript(false);
-                if (bubbleSendButton != null) bubbleSendButton.setEnabled(true);
                 if (alwaysListeningEnabled && sttPendingRestartAfterReply) {
                     sttPendingRestartAfterReply = false;
                     scheduleSpeechRestart(200);
@@ -2010,103 +2193,206 @@ public class HedgehogOverlayService extends Service {
         });
     }
 
+    private boolean isCurrentChatTurn(int turnId) {
+        return chatTurnSeq.get() == turnId;
+    }
+
+    private void onStreamPartial(String textSoFar) {
+        streamingReplyPreview = stripToolTokensForPreview(textSoFar);
+        if (streamPreviewRenderQueued.compareAndSet(false, true)) {
+            mainHandler.postDelayed(streamPreviewRenderRunnable, STREAM_PREVIEW_RENDER_MS);
+        }
+    }
+
+    private void postAssistantLine(String text, int turnId) {
+        mainHandler.post(() -> {
+            if (!isCurrentChatTurn(turnId)) return;
+            streamingReplyPreview = "";
+            appendTranscriptLine("Hitomi: " + text);
+            renderTranscript(true);
+        });
+    }
+
+    private static String stripToolTokensForPreview(String raw) {
+        if (raw == null || raw.isEmpty()) return "";
+        StringBuilder out = new StringBuilder(raw.length());
+        int idx = 0;
+        while (idx < raw.length()) {
+            int start = raw.indexOf("{{", idx);
+            if (start < 0) {
+                out.append(raw, idx, raw.length());
+                break;
+            }
+            out.append(raw, idx, start);
+            int end = raw.indexOf("}}", start);
+            // An unclosed token is still streaming in; hide it until it completes.
+            if (end < 0) break;
+            idx = end + 2;
+        }
+        int len = out.length();
+        if (len > 0 && out.charAt(len - 1) == '{') out.setLength(len - 1);
+        return out.toString().trim();
+    }
+
     private void appendTranscriptLine(String line) {
-        if (transcript == null || transcript.isEmpty()) transcript = line;
-        else transcript = transcript + "\n\n" + line;
+        if (sessionLog != null) sessionLog.append(SessionLog.TYPE_TRANSCRIPT, line);
+        transcript.appendLine(line);
     }
 
     private ParsedAssistantReply parseAssistantReply(String raw) {
         String source = raw == null ? "" : raw.trim();
-        if (source.isEmpty()) return new ParsedAssistantReply("", null, null, null, null);
+        List<AndroidToolRegistry.ToolCall> toolCalls = new ArrayList<>();
+        if (source.isEmpty()) return new ParsedAssistantReply("", toolCalls);
         StringBuilder visible = new StringBuilder();
-        List<String> browserUrls = new ArrayList<>();
-        List<String> browserReadUrls = new ArrayList<>();
-        List<String> termuxCommands = new ArrayList<>();
-        List<String> solanaActions = new ArrayList<>();
         int idx = 0;
         while (idx < source.length()) {
-            int start = source.indexOf("{{tool:", idx);
+            int start = source.indexOf(AndroidToolRegistry.TOKEN_PREFIX, idx);
             if (start < 0) {
                 visible.append(source.substring(idx));
                 break;
             }
             visible.append(source, idx, start);
-            int end = source.indexOf("}}", start);
+            int end = source.indexOf(AndroidToolRegistry.TOKEN_SUFFIX, start);
             if (end < 0) {
                 visible.append(source.substring(start));
                 break;
             }
-            String tokenBody = source.substring(start + 2, end).trim();
-            maybeExtractAndroidTool(tokenBody, browserUrls, browserReadUrls, termuxCommands, solanaActions);
+            AndroidToolRegistry.addCall(toolCalls, toolRegistry.parseToken(source, start + 2, end));
             idx = end + 2;
         }
         String cleaned = visible.toString()
             .replaceAll("[ \\t]+\\n", "\n")
             .replaceAll("\\n{3,}", "\n\n")
             .trim();
-        if (cleaned.isEmpty() && !browserUrls.isEmpty()) {
-            cleaned = "Opening the Hitomi Browser so you can watch me browse.";
+        if (cleaned.isEmpty() && !toolCalls.isEmpty()) {
+            cleaned = toolCalls.get(0).handler.placeholderText(toolCalls.get(0));
         }
-        if (cleaned.isEmpty() && !browserReadUrls.isEmpty()) {
-            cleaned = "Opening the Hitomi Browser and reading the page for you.";
+        return new ParsedAssistantReply(cleaned, toolCalls);
+    }
+
+    private void runToolCallsAndFollowup(String userName, ParsedAssistantReply parsedReply, int turnId, ToolRunSet toolRuns,
+                                         HitomiCloudChatClient.StreamListener streamListener, HitomiCloudChatClient.Cancellation cancel) {
+        // Calls already started from the stream are picked up again here instead of rerun.
+        List<ToolRun> runs = new ArrayList<>();
+        for (AndroidToolRegistry.ToolCall call : parsedReply.toolCalls) {
+            ToolRun run = toolRuns.start(call);
+            if (run != null) runs.add(run);
         }
-        if (cleaned.isEmpty() && !termuxCommands.isEmpty()) {
-            cleaned = "Running a Termux command for you now.";
+
+        List<AndroidToolRegistry.ToolOutcome> outcomes = new ArrayList<>();
+        for (ToolRun run : runs) {
+            try {
+                long waitMs = Math.max(0L, run.deadlineMs - System.currentTimeMillis());
+                outcomes.add(run.future.get(waitMs, TimeUnit.MILLISECONDS));
+            } catch (CancellationException e) {
+                return;
+            } catch (TimeoutException e) {
+                run.future.cancel(true);
+                outcomes.add(AndroidToolRegistry.ToolOutcome.reply("My " + run.call.name + " tool took too long, so I stopped waiting for it."));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                toolRuns.cancelAll();
+                return;
+            } catch (Exception e) {
+                outcomes.add(AndroidToolRegistry.ToolOutcome.reply("I hit a snag running my Android tools: " + safeMessage(e)));
+            }
         }
-        if (cleaned.isEmpty() && !solanaActions.isEmpty()) {
-            cleaned = ANDROID_SOLANA_REFRESH_TOOL_NAME.equals(solanaActions.get(0))
-                ? "Refreshing your connected Solana wallet now."
-                : "Checking your connected Solana wallet now.";
+        if (!isCurrentChatTurn(turnId)) return;
+
+        StringBuilder toolResults = new StringBuilder();
+        int resultCount = 0;
+        for (AndroidToolRegistry.ToolOutcome outcome : outcomes) {
+            if (outcome.directReply != null) postAssistantReply(outcome.directReply, turnId);
+            if (outcome.toolResult == null) continue;
+            if (toolResults.length() > 0) toolResults.append("\n\n");
+            toolResults.append(outcome.toolResult);
+            resultCount++;
         }
-        return new ParsedAssistantReply(
-            cleaned,
-            browserUrls.isEmpty() ? null : browserUrls.get(0),
-            browserReadUrls.isEmpty() ? null : browserReadUrls.get(0),
-            termuxCommands.isEmpty() ? null : termuxCommands.get(0),
-            solanaActions.isEmpty() ? null : solanaActions.get(0)
-        );
+        if (resultCount == 0) return;
+        if (resultCount > 1) {
+            toolResults.append("\n\nThese ").append(resultCount).append(" tool results came from one reply. Answer the user once, covering all of them.");
+        }
+        chatHistory.addToolResult(toolResults.toString());
+        String followup;
+        try {
+            followup = chatClient.send(chatHistory.toJsonArray(), userName, streamListener, cancel);
+        } catch (CancellationException e) {
+            return;
+        } catch (Exception e) {
+            followup = "I ran my Android tools, but I hit a snag reading the results: " + safeMessage(e);
+        }
+        postAssistantReply(followup, turnId);
     }
 
-    private void maybeExtractAndroidTool(String tokenBody, List<String> browserUrls, List<String> browserReadUrls, List<String> termuxCommands, List<String> solanaActions) {
-        if (tokenBody == null || !tokenBody.startsWith("tool:")) return;
-        String payload = tokenBody.substring("tool:".length());
-        String[] parts = payload.split("\\|");
-        if (parts.length == 0) return;
-        String toolName = parts[0].trim();
-        boolean openOnly = ANDROID_BROWSER_TOOL_NAME.equals(toolName);
-        boolean browseRead = ANDROID_BROWSER_BROWSE_TOOL_NAME.equals(toolName);
-        boolean termuxExec = ANDROID_TERMUX_EXEC_TOOL_NAME.equals(toolName);
-        boolean solanaOverview = ANDROID_SOLANA_OVERVIEW_TOOL_NAME.equals(toolName);
-        boolean solanaRefresh = ANDROID_SOLANA_REFRESH_TOOL_NAME.equals(toolName);
-        if (!openOnly && !browseRead && !termuxExec && !solanaOverview && !solanaRefresh) return;
-        if (solanaOverview || solanaRefresh) {
-            solanaActions.add(toolName);
-            return;
+    private static final class ToolRun {
+        final AndroidToolRegistry.ToolCall call;
+        final Future<AndroidToolRegistry.ToolOutcome> future;
+        final long deadlineMs;
+
+        ToolRun(AndroidToolRegistry.ToolCall call, Future<AndroidToolRegistry.ToolOutcome> future, long deadlineMs) {
+            this.call = call;
+            this.future = future;
+            this.deadlineMs = deadlineMs;
         }
-        for (int i = 1; i < parts.length; i++) {
-            String part = parts[i];
-            int eq = part.indexOf('=');
-            if (eq <= 0) continue;
-            String key = part.substring(0, eq).trim();
-            String val = part.substring(eq + 1).trim();
-            if (termuxExec) {
-                if (!"cmd".equalsIgnoreCase(key)) continue;
-                String cmd = sanitizeTermuxCommand(val);
-                if (cmd != null && !cmd.isEmpty()) termuxCommands.add(cmd);
-                return;
+    }
+
+    // Tool runs of one chat turn, keyed by tool name and call key, so a call started while
+    // the reply streamed is not started again once the full reply is parsed.
+    private final class ToolRunSet {
+        private final Map<String, ToolRun> runs = new HashMap<>();
+        private long serialDeadlineMs = 0L;
+        private boolean cancelled = false;
+
+        synchronized ToolRun start(AndroidToolRegistry.ToolCall call) {
+            if (cancelled) return null;
+            String runKey = call.name + "\n" + call.key;
+            ToolRun existing = runs.get(runKey);
+            if (existing != null) return existing;
+            if (runs.size() >= MAX_TOOL_CALLS_PER_REPLY) return null;
+            long now = System.currentTimeMillis();
+            long timeoutMs = call.handler.timeoutMs();
+            ToolRun run;
+            if (call.handler.runsConcurrently()) {
+                run = new ToolRun(call, toolExecutor.submit(() -> runToolCall(call)), now + timeoutMs);
             } else {
-                if (!"url".equalsIgnoreCase(key)) continue;
-                String normalized = normalizeBrowserUrl(val);
-                if (normalized != null && !normalized.isEmpty()) {
-                    if (browseRead) browserReadUrls.add(normalized);
-                    else browserUrls.add(normalized);
-                }
-                return;
+                // Serial calls queue on one lock, so each one's deadline includes the ones ahead of it.
+                serialDeadlineMs = Math.max(serialDeadlineMs, now) + timeoutMs;
+                run = new ToolRun(call, toolExecutor.submit(() -> {
+                    // Interruptible, so a cancelled call leaves the queue instead of running later.
+                    serialToolLock.lockInterruptibly();
+                    try {
+                        return runToolCall(call);
+                    } finally {
+                        serialToolLock.unlock();
+                    }
+                }), serialDeadlineMs);
             }
+            runs.put(runKey, run);
+            return run;
         }
+
+        synchronized void cancelAll() {
+            cancelled = true;
+            for (ToolRun run : runs.values()) run.future.cancel(true);
+        }
+    }
+
+    private AndroidToolRegistry.ToolOutcome runToolCall(AndroidToolRegistry.ToolCall call) {
+        try {
+            AndroidToolRegistry.ToolOutcome outcome = call.handler.run(call);
+            return outcome == null ? AndroidToolRegistry.ToolOutcome.none() : outcome;
+        } catch (Exception e) {
+            return AndroidToolRegistry.ToolOutcome.reply("I hit a snag running " + call.name + ": " + safeMessage(e));
+        }
+    }
+
+    private void postAssistantReply(String text, int turnId) {
+        if (text == null || text.trim().isEmpty() || !isCurrentChatTurn(turnId)) return;
+        chatHistory.addAssistant(text);
+        postAssistantLine(text.trim(), turnId);
     }
 
-    private String runBrowserReadFollowup(String userName, String browserReadUrl) {
+    private AndroidToolRegistry.ToolOutcome collectBrowserReadResult(String browserReadUrl) {
         try {
             CountDownLatch latch = new CountDownLatch(1);
             final BrowserSnapshot[] holder = new BrowserSnapshot[1];
@@ -2117,93 +2403,118 @@ public class HedgehogOverlayService extends Service {
             latch.await(15, TimeUnit.SECONDS);
             BrowserSnapshot snapshot = holder[0];
             if (snapshot == null) {
-                return "I opened the Hitomi Browser, but I couldn't read the page yet. Please try again.";
+                return AndroidToolRegistry.ToolOutcome.reply("I opened the Hitomi Browser, but I couldn't read the page yet. Please try again.");
             }
-            String toolResult = buildBrowserSnapshotToolResult(snapshot);
-            try {
-                chatHistory.put(new JSONObject().put("role", "user").put("content", toolResult));
-            } catch (Exception ignored) {
-            }
-            return chatClient.send(chatHistory, userName);
+            return AndroidToolRegistry.ToolOutcome.result(buildBrowserSnapshotToolResult(snapshot));
         } catch (Exception e) {
-            return "I opened the Hitomi Browser, but I hit a snag reading the page: " + safeMessage(e);
+            return AndroidToolRegistry.ToolOutcome.reply("I opened the Hitomi Browser, but I hit a snag reading the page: " + safeMessage(e));
         }
     }
 
-    private String runTermuxCommandFollowup(String userName, String command) {
+    private AndroidToolRegistry.ToolOutcome collectTermuxCommandResult(String command) {
         try {
             String trimmed = command == null ? "" : command.trim();
             if (trimmed.isEmpty()) {
-                return "I tried to run a Termux command, but the command was empty.";
+                return AndroidToolRegistry.ToolOutcome.reply("I tried to run a Termux command, but the command was empty.");
             }
             String blockedReason = getBlockedTermuxCommandReason(trimmed);
             if (blockedReason != null) {
-                String toolResult = "[ANDROID_TERMUX_SHELL]\n"
+                return AndroidToolRegistry.ToolOutcome.result("[ANDROID_TERMUX_SHELL]\n"
                     + "Hitomi tried to use a Termux shell command, but Android safety rules blocked it.\n"
                     + "Command: " + trimmed + "\n"
                     + "Reason: " + blockedReason + "\n"
                     + "[/ANDROID_TERMUX_SHELL]\n"
-                    + "Tell the user briefly what was blocked and suggest a safer command or ask them to run it manually in Termux.";
-                try {
-                    chatHistory.put(new JSONObject().put("role", "user").put("content", toolResult));
-                } catch (Exception ignored) {
-                }
-                return chatClient.send(chatHistory, userName);
+                    + "Tell the user briefly what was blocked and suggest a safer command or ask them to run it manually in Termux.");
             }
-            if (termuxCommandBridge == null) {
-                termuxCommandBridge = new TermuxCommandBridge(this);
+            TermuxCommandBridge bridge;
+            TermuxSession session;
+            synchronized (this) {
+                if (termuxCommandBridge == null) {
+                    termuxCommandBridge = new TermuxCommandBridge(this);
+                }
+                bridge = termuxCommandBridge;
+                if (termuxSession == null) {
+                    termuxSession = new TermuxSession(bridge);
+                }
+                session = termuxSession;
             }
-            if (termuxCommandBridge == null || !termuxCommandBridge.isTermuxInstalled()) {
+            if (bridge == null || !bridge.isTermuxInstalled()) {
                 openMainSettingsWindow();
                 noteTermuxUnavailable(trimmed, "TERMUX_NOT_INSTALLED", "Install Termux and Termux:API, then connect shell tools from the main settings window.");
-                String toolResult = buildTermuxUnavailableToolResult(
+                return AndroidToolRegistry.ToolOutcome.result(buildTermuxUnavailableToolResult(
                     trimmed,
                     "TERMUX_NOT_INSTALLED",
                     "Install Termux and Termux:API, then connect shell tools from the main settings window."
-                );
-                try {
-                    chatHistory.put(new JSONObject().put("role", "user").put("content", toolResult));
-                } catch (Exception ignored) {
-                }
-                return chatClient.send(chatHistory, userName);
+                ));
             }
             noteTermuxCommandDispatched(trimmed);
-            CountDownLatch latch = new CountDownLatch(1);
-            final TermuxCommandBridge.Result[] holder = new TermuxCommandBridge.Result[1];
-            termuxCommandBridge.runCommand(
-                "/data/data/com.termux/files/usr/bin/sh",
-                new String[]{"-lc", trimmed},
-                null,
-                result -> {
-                    holder[0] = result;
-                    latch.countDown();
+            long startedAt = System.currentTimeMillis();
+            // The persistent shell keeps cwd and exports between calls; a one-shot login shell
+            // is only used when the session helper cannot be started.
+            final boolean[] streamed = new boolean[1];
+            TermuxCommandBridge.Result result = session.exec(trimmed, 18000L, new TermuxSession.OutputListener() {
+                @Override
+                public void onOutput(String text, boolean stderr) {
+                    streamed[0] = true;
+                    streamTerminalOutput(text);
                 }
-            );
-            latch.await(18, TimeUnit.SECONDS);
-            TermuxCommandBridge.Result result = holder[0];
+
+                @Override
+                public void onQueued(int position) {
+                    mainHandler.post(() -> setTerminalStatus("Waiting for Termux (#" + position + ")..."));
+                }
+            });
             if (result == null) {
-                noteTermuxResult(trimmed, null);
-                return "I tried a Termux command, but I did not get a result back in time.";
+                result = runTermuxOneShot(bridge, trimmed, Math.max(1000L, 18000L - (System.currentTimeMillis() - startedAt)));
             }
-            noteTermuxResult(trimmed, result);
+            if (result == null) {
+                noteTermuxResult(trimmed, null, false);
+                return AndroidToolRegistry.ToolOutcome.reply("I tried a Termux command, but I did not get a result back in time.");
+            }
+            noteTermuxResult(trimmed, result, streamed[0]);
             String setupFallback = buildTermuxSetupFallbackIfNeeded(result);
             if (setupFallback != null) {
                 openMainSettingsWindow();
-                try {
-                    chatHistory.put(new JSONObject().put("role", "user").put("content", setupFallback));
-                } catch (Exception ignored) {
+                return AndroidToolRegistry.ToolOutcome.result(setupFallback);
+            }
+            return AndroidToolRegistry.ToolOutcome.result(buildTermuxToolResult(trimmed, result));
+        } catch (InterruptedException e) {
+            // The turn was superseded; nobody reads this outcome.
+            Thread.currentThread().interrupt();
+            mainHandler.post(() -> setTerminalStatus("Termux command stopped"));
+            return AndroidToolRegistry.ToolOutcome.none();
+        } catch (Exception e) {
+            return AndroidToolRegistry.ToolOutcome.reply("I hit a snag running a Termux command: " + safeMessage(e));
+        }
+    }
+
+    private TermuxCommandBridge.Result runTermuxOneShot(TermuxCommandBridge bridge, String command, long waitMs) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        final TermuxCommandBridge.Result[] holder = new TermuxCommandBridge.Result[1];
+        int reqId = bridge.runCommand(
+            "/data/data/com.termux/files/usr/bin/sh",
+            new String[]{"-lc", command},
+            null,
+            new TermuxCommandBridge.Callback() {
+                @Override
+                public void onResult(TermuxCommandBridge.Result result) {
+                    holder[0] = result;
+                    latch.countDown();
+                }
+
+                @Override
+                public void onQueued(int position) {
+                    mainHandler.post(() -> setTerminalStatus("Waiting for Termux (#" + position + ")..."));
                 }
-                return chatClient.send(chatHistory, userName);
-            }
-            String toolResult = buildTermuxToolResult(trimmed, result);
-            try {
-                chatHistory.put(new JSONObject().put("role", "user").put("content", toolResult));
-            } catch (Exception ignored) {
             }
-            return chatClient.send(chatHistory, userName);
-        } catch (Exception e) {
-            return "I hit a snag running a Termux command: " + safeMessage(e);
+        );
+        try {
+            latch.await(waitMs, TimeUnit.MILLISECONDS);
+        } finally {
+            // Frees the slot if we stopped waiting, so later calls are not stuck behind it.
+            if (holder[0] == null && reqId >= 0) bridge.cancel(reqId);
         }
+        return holder[0];
     }
 
     private String buildTermuxSetupFallbackIfNeeded(TermuxCommandBridge.Result result) {
@@ -2253,6 +2564,8 @@ public class HedgehogOverlayService extends Service {
             + "Command: " + command + "\n"
             + "Exit code: " + result.exitCode + "\n"
             + (result.timedOut ? "Timed out: true\n" : "")
+            + (result.queuedBehind > 0 ? "Waited behind other commands: " + result.queuedBehind + "\n" : "")
+            + (result.workingDirectory.isEmpty() ? "" : "Working directory (kept for the next command): " + result.workingDirectory + "\n")
             + (errMsg.isEmpty() ? "" : "Error message: " + errMsg + "\n")
             + "STDOUT:\n" + (stdout.isEmpty() ? "(empty)" : stdout) + "\n"
             + "STDERR:\n" + (stderr.isEmpty() ? "(empty)" : stderr) + "\n"
@@ -2260,31 +2573,109 @@ public class HedgehogOverlayService extends Service {
             + "Use the shell result to answer the user briefly and honestly.";
     }
 
-    private String runSolanaWalletFollowup(String userName, boolean forceRefresh) {
+    private AndroidToolRegistry.ToolOutcome collectSolanaWalletResult(boolean forceRefresh) {
         try {
-            if (solanaWalletClient == null) {
-                solanaWalletClient = new SolanaWalletClient(this);
+            SolanaWalletClient wallets;
+            synchronized (this) {
+                if (solanaWalletClient == null) {
+                    solanaWalletClient = new SolanaWalletClient(this);
+                }
+                wallets = solanaWalletClient;
             }
-            SolanaWalletClient.StoredWallet wallet = solanaWalletClient.getStoredWallet();
+            SolanaWalletClient.StoredWallet wallet = wallets.getStoredWallet();
             if (wallet == null || wallet.address.isEmpty()) {
                 mainHandler.post(() -> showSolanaWindow(true));
-                return "I don't have a stored Solana wallet yet, so I opened the purple Solana window for you.";
+                return AndroidToolRegistry.ToolOutcome.reply("I don't have a stored Solana wallet yet, so I opened the purple Solana window for you.");
             }
             SolanaWalletClient.WalletSnapshot snapshot = forceRefresh
-                ? solanaWalletClient.refresh(wallet.address)
-                : solanaWalletClient.getOverview(wallet.address);
-            String toolResult = buildSolanaWalletToolResult(snapshot, forceRefresh);
+                ? wallets.refresh(wallet.address)
+                : wallets.getOverview(wallet.address);
+            boolean stale = !forceRefresh && snapshot.lastError.isEmpty() && !wallets.isFresh(snapshot);
+            return AndroidToolRegistry.ToolOutcome.result(buildSolanaWalletToolResult(snapshot, forceRefresh, stale));
+        } catch (Exception e) {
+            return AndroidToolRegistry.ToolOutcome.reply("I hit a snag checking your Solana wallet: " + safeMessage(e));
+        }
+    }
+
+    private AndroidToolRegistry.ToolOutcome collectSolanaHistoryResult(String since, String beforeSlotText) {
+        try {
+            SolanaWalletClient wallets;
+            synchronized (this) {
+                if (solanaWalletClient == null) {
+                    solanaWalletClient = new SolanaWalletClient(this);
+                }
+                wallets = solanaWalletClient;
+            }
+            SolanaWalletClient.StoredWallet wallet = wallets.getStoredWallet();
+            if (wallet == null || wallet.address.isEmpty()) {
+                mainHandler.post(() -> showSolanaWindow(true));
+                return AndroidToolRegistry.ToolOutcome.reply("I don't have a stored Solana wallet yet, so I opened the purple Solana window for you.");
+            }
+            long sinceEpoch = since.isEmpty() ? 0L : WalletLedgerStore.epochFromIso(since + "T00:00:00Z");
+            long beforeSlot = 0L;
             try {
-                chatHistory.put(new JSONObject().put("role", "user").put("content", toolResult));
-            } catch (Exception ignored) {
+                beforeSlot = beforeSlotText.isEmpty() ? 0L : Long.parseLong(beforeSlotText);
+            } catch (NumberFormatException ignored) {
+            }
+            WalletLedgerStore.Totals totals = wallets.getLedgerTotalsSince(wallet.address, sinceEpoch);
+            JSONArray page = wallets.getLedgerPage(wallet.address, beforeSlot, SOLANA_HISTORY_PAGE_SIZE);
+            StringBuilder out = new StringBuilder();
+            out.append("[ANDROID_SOLANA_WALLET_HISTORY]\n");
+            out.append("Address: ").append(wallet.address).append("\n");
+            out.append("Source: transactions synced to this device by earlier wallet refreshes\n");
+            out.append("Oldest synced transaction: ")
+                .append(totals.oldestBlockTime > 0L ? WalletLedgerStore.isoFromEpoch(totals.oldestBlockTime) : "(none)")
+                .append("\n");
+            if (totals.gapCount > 0) {
+                out.append("Unsynced gaps in this range: ").append(totals.gapCount)
+                    .append(" (some transactions were never synced; complete only since ")
+                    .append(totals.completeSinceBlockTime > 0L ? WalletLedgerStore.isoFromEpoch(totals.completeSinceBlockTime) : "an unknown time")
+                    .append(")\n");
+            }
+            if (!since.isEmpty() && sinceEpoch <= 0L) {
+                out.append("Error: could not read since=").append(since).append(", expected YYYY-MM-DD\n");
+            }
+            out.append("Since: ").append(sinceEpoch > 0L ? WalletLedgerStore.isoFromEpoch(sinceEpoch) : "(all synced history)").append("\n");
+            String floor = totals.gapCount > 0 ? " (at least; gaps not included)" : "";
+            out.append("Transactions counted: ").append(totals.transactionCount).append(floor).append("\n");
+            out.append("Net SOL change: ").append(totals.netLamports / 1_000_000_000d)
+                .append(totals.gapCount > 0 ? " (incomplete; gaps not included)" : "").append("\n");
+            if (totals.partialCount > 0) {
+                out.append("Transactions without balance details: ").append(totals.partialCount).append("\n");
+            }
+            out.append("Transactions:\n");
+            long lastSlot = 0L;
+            for (int i = 0; i < page.length(); i++) {
+                JSONObject tx = page.optJSONObject(i);
+                if (tx == null) continue;
+                lastSlot = tx.optLong("slot", 0L);
+                out.append("- signature=").append(safe(tx.optString("signature", ""))).append("\n");
+                out.append("  slot=").append(lastSlot).append("\n");
+                out.append("  block_time=").append(safe(tx.optString("blockTime", ""))).append("\n");
+                appendNetSolChange(out, tx);
+            }
+            if (page.length() == 0) out.append("(none)\n");
+            if (page.length() == SOLANA_HISTORY_PAGE_SIZE && lastSlot > 0L) {
+                out.append("Next page: before_slot=").append(lastSlot).append("\n");
             }
-            return chatClient.send(chatHistory, userName);
+            out.append("[/ANDROID_SOLANA_WALLET_HISTORY]\n");
+            out.append("Answer from this saved history only, and say so if it does not reach back far enough"
+                + (totals.gapCount > 0 ? " or if gaps make the totals incomplete." : "."));
+            return AndroidToolRegistry.ToolOutcome.result(out.toString());
         } catch (Exception e) {
-            return "I hit a snag checking your Solana wallet: " + safeMessage(e);
+            return AndroidToolRegistry.ToolOutcome.reply("I hit a snag reading your saved Solana history: " + safeMessage(e));
         }
     }
 
-    private String buildSolanaWalletToolResult(SolanaWalletClient.WalletSnapshot snapshot, boolean refreshed) {
+    private void onSolanaSnapshotUpdated(SolanaWalletClient.WalletSnapshot snapshot) {
+        mainHandler.post(() -> {
+            if (solanaStatusView == null) return;
+            solanaStatusView.setText("Balance " + snapshot.balanceSol + " SOL, updated " + snapshot.balanceAt
+                + ". Hitomi will use this for your next wallet question.");
+        });
+    }
+
+    private String buildSolanaWalletToolResult(SolanaWalletClient.WalletSnapshot snapshot, boolean refreshed, boolean stale) {
         String address = snapshot == null ? "" : safe(snapshot.address);
         String fetchedAt = snapshot == null ? "" : safe(snapshot.fetchedAt);
         String rpcSource = snapshot == null ? "" : safe(snapshot.rpcSource);
@@ -2299,20 +2690,25 @@ public class HedgehogOverlayService extends Service {
         out.append("Balance SOL: ").append(balanceSol).append("\n");
         out.append("Lamports: ").append(lamports).append("\n");
         out.append("Fetched at: ").append(fetchedAt.isEmpty() ? "(not fetched)" : fetchedAt).append("\n");
+        String balanceAt = snapshot == null ? "" : safe(snapshot.balanceAt);
+        if (!balanceAt.isEmpty() && !balanceAt.equals(fetchedAt)) {
+            out.append("Balance pushed at: ").append(balanceAt).append(" (newer than the transaction list)\n");
+        }
         out.append("RPC source: ").append(rpcSource.isEmpty() ? "(none)" : rpcSource).append("\n");
         if (refreshed) out.append("Refresh: true\n");
+        if (stale) out.append("Stale: true (saved data; a background refresh is updating it now)\n");
         if (!lastError.isEmpty()) out.append("Error: ").append(lastError).append("\n");
         if (txs == null || txs.length() == 0) {
             out.append("Recent transactions: none\n");
         } else {
             out.append("Recent transactions:\n");
-            for (int i = 0; i < txs.length() && i < 5; i++) {
+            for (int i = 0; i < txs.length() && i < SolanaWalletClient.RECENT_TRANSACTION_LIMIT; i++) {
                 JSONObject tx = txs.optJSONObject(i);
                 if (tx == null) continue;
                 out.append("- signature=").append(safe(tx.optString("signature", ""))).append("\n");
                 out.append("  status=").append(safe(tx.optString("confirmationStatus", ""))).append("\n");
                 out.append("  block_time=").append(safe(tx.optString("blockTime", ""))).append("\n");
-                out.append("  net_sol_change=").append(tx.optDouble("netSol", 0d)).append("\n");
+                appendNetSolChange(out, tx);
             }
         }
         out.append("[/ANDROID_SOLANA_WALLET]\n");
@@ -2320,6 +2716,14 @@ public class HedgehogOverlayService extends Service {
         return out.toString();
     }
 
+    // Partial rows were never fetched in full, so their 0 is unknown, not "no change".
+    private static void appendNetSolChange(StringBuilder out, JSONObject tx) {
+        out.append("  net_sol_change=");
+        if (tx.optBoolean("partial", false)) out.append("unknown (no balance details)");
+        else out.append(tx.optDouble("netSol", 0d));
+        out.append("\n");
+    }
+
     private String getBlockedTermuxCommandReason(String command) {
         String c = command == null ? "" : command.trim().toLowerCase();
         if (c.isEmpty()) return "empty command";
@@ -2357,18 +2761,195 @@ public class HedgehogOverlayService extends Service {
 
     private static final class ParsedAssistantReply {
         final String visibleText;
-        final String browserUrl;
-        final String browserReadUrl;
-        final String termuxCommand;
-        final String solanaToolName;
-        ParsedAssistantReply(String visibleText, String browserUrl, String browserReadUrl, String termuxCommand, String solanaToolName) {
+        final List<AndroidToolRegistry.ToolCall> toolCalls;
+        ParsedAssistantReply(String visibleText, List<AndroidToolRegistry.ToolCall> toolCalls) {
             this.visibleText = (visibleText == null || visibleText.trim().isEmpty())
                 ? "Okay."
                 : visibleText.trim();
-            this.browserUrl = browserUrl;
-            this.browserReadUrl = browserReadUrl;
-            this.termuxCommand = termuxCommand;
-            this.solanaToolName = solanaToolName;
+            this.toolCalls = toolCalls;
+        }
+    }
+
+    private AndroidToolRegistry buildToolRegistry() {
+        AndroidToolRegistry registry = new AndroidToolRegistry();
+        registry.register(ANDROID_BROWSER_TOOL_NAME, new BrowserOpenTool());
+        registry.register(ANDROID_BROWSER_BROWSE_TOOL_NAME, new BrowserReadTool());
+        registry.register(ANDROID_TERMUX_EXEC_TOOL_NAME, new TermuxExecTool());
+        SolanaWalletTool solanaWalletTool = new SolanaWalletTool();
+        registry.register(ANDROID_SOLANA_OVERVIEW_TOOL_NAME, solanaWalletTool);
+        registry.register(ANDROID_SOLANA_REFRESH_TOOL_NAME, solanaWalletTool);
+        registry.register(ANDROID_SOLANA_HISTORY_TOOL_NAME, new SolanaWalletHistoryTool());
+        return registry;
+    }
+
+    private final class BrowserOpenTool implements AndroidToolRegistry.ToolHandler {
+        @Override
+        public long timeoutMs() {
+            return 2000L;
+        }
+
+        @Override
+        public boolean runsConcurrently() {
+            return false;
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolCall prepare(String name, Map<String, String> args) {
+            String url = args == null ? null : normalizeBrowserUrl(args.get("url"));
+            if (url == null || url.isEmpty()) return null;
+            // Only one page can be on screen, so a second open replaces the first.
+            return new AndroidToolRegistry.ToolCall(this, name, "", Collections.singletonMap("url", url));
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolCall merge(AndroidToolRegistry.ToolCall existing, AndroidToolRegistry.ToolCall incoming) {
+            return incoming;
+        }
+
+        @Override
+        public boolean startsWhileStreaming() {
+            // The last open in the reply wins, which is only known once the reply is complete.
+            return false;
+        }
+
+        @Override
+        public String placeholderText(AndroidToolRegistry.ToolCall call) {
+            return "Opening the Hitomi Browser so you can watch me browse.";
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolOutcome run(AndroidToolRegistry.ToolCall call) {
+            mainHandler.post(() -> showHitomiBrowserForUrl(call.arg("url")));
+            return AndroidToolRegistry.ToolOutcome.none();
+        }
+    }
+
+    private final class BrowserReadTool implements AndroidToolRegistry.ToolHandler {
+        @Override
+        public long timeoutMs() {
+            return 20000L;
+        }
+
+        @Override
+        public boolean runsConcurrently() {
+            // The Hitomi Browser is a single WebView, so page reads take turns.
+            return false;
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolCall prepare(String name, Map<String, String> args) {
+            String url = args == null ? null : normalizeBrowserUrl(args.get("url"));
+            if (url == null || url.isEmpty()) return null;
+            return new AndroidToolRegistry.ToolCall(this, name, url, Collections.singletonMap("url", url));
+        }
+
+        @Override
+        public String placeholderText(AndroidToolRegistry.ToolCall call) {
+            return "Opening the Hitomi Browser and reading the page for you.";
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolOutcome run(AndroidToolRegistry.ToolCall call) {
+            return collectBrowserReadResult(call.arg("url"));
+        }
+    }
+
+    private final class TermuxExecTool implements AndroidToolRegistry.ToolHandler {
+        @Override
+        public long timeoutMs() {
+            return 20000L;
+        }
+
+        @Override
+        public boolean runsConcurrently() {
+            return true;
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolCall prepare(String name, Map<String, String> args) {
+            String cmd = args == null ? null : sanitizeTermuxCommand(args.get("cmd"));
+            if (cmd == null || cmd.isEmpty()) return null;
+            return new AndroidToolRegistry.ToolCall(this, name, cmd, Collections.singletonMap("cmd", cmd));
+        }
+
+        @Override
+        public String placeholderText(AndroidToolRegistry.ToolCall call) {
+            return "Running a Termux command for you now.";
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolOutcome run(AndroidToolRegistry.ToolCall call) {
+            return collectTermuxCommandResult(call.arg("cmd"));
+        }
+    }
+
+    private final class SolanaWalletTool implements AndroidToolRegistry.ToolHandler {
+        @Override
+        public long timeoutMs() {
+            return 45000L;
+        }
+
+        @Override
+        public boolean runsConcurrently() {
+            return true;
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolCall prepare(String name, Map<String, String> args) {
+            return new AndroidToolRegistry.ToolCall(this, name, "wallet", null);
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolCall merge(AndroidToolRegistry.ToolCall existing, AndroidToolRegistry.ToolCall incoming) {
+            // A refresh already includes everything an overview would report.
+            return isRefresh(incoming) ? incoming : existing;
+        }
+
+        @Override
+        public String placeholderText(AndroidToolRegistry.ToolCall call) {
+            return isRefresh(call)
+                ? "Refreshing your connected Solana wallet now."
+                : "Checking your connected Solana wallet now.";
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolOutcome run(AndroidToolRegistry.ToolCall call) {
+            return collectSolanaWalletResult(isRefresh(call));
+        }
+
+        private boolean isRefresh(AndroidToolRegistry.ToolCall call) {
+            return ANDROID_SOLANA_REFRESH_TOOL_NAME.equals(call.name);
+        }
+    }
+
+    private final class SolanaWalletHistoryTool implements AndroidToolRegistry.ToolHandler {
+        @Override
+        public long timeoutMs() {
+            return 5000L;
+        }
+
+        @Override
+        public boolean runsConcurrently() {
+            return true;
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolCall prepare(String name, Map<String, String> args) {
+            Map<String, String> cleanArgs = new HashMap<>();
+            cleanArgs.put("since", args == null ? "" : safe(args.get("since")).trim());
+            cleanArgs.put("before_slot", args == null ? "" : safe(args.get("before_slot")).trim());
+            return new AndroidToolRegistry.ToolCall(this, name,
+                cleanArgs.get("since") + "|" + cleanArgs.get("before_slot"), cleanArgs);
+        }
+
+        @Override
+        public String placeholderText(AndroidToolRegistry.ToolCall call) {
+            return "Looking through your saved Solana wallet history.";
+        }
+
+        @Override
+        public AndroidToolRegistry.ToolOutcome run(AndroidToolRegistry.ToolCall call) {
+            return collectSolanaHistoryResult(call.arg("since"), call.arg("before_slot"));
         }
     }
 
@@ -2545,22 +3126,26 @@ public class HedgehogOverlayService extends Service {
         }
     }
 
+    // Only the status cell changes here; committed lines were already added as their own cells
+    // by appendTranscriptLine.
     private void renderTranscript(boolean thinking) {
         if (bubbleBodyView == null) return;
-        String text = transcript == null ? "" : transcript;
+        StringBuilder status = new StringBuilder();
         if (alwaysListeningEnabled) {
-            text = text + (text.isEmpty() ? "" : "\n\n") + "Listening...";
+            status.append("Listening...");
             if (sttPartialPreview != null && !sttPartialPreview.isEmpty()) {
-                text = text + "\n" + sttPartialPreview;
+                status.append("\n").append(sttPartialPreview);
             }
         } else if (sttPartialPreview != null && !sttPartialPreview.isEmpty()) {
-            text = text + (text.isEmpty() ? "" : "\n\n") + sttPartialPreview;
+            status.append(sttPartialPreview);
         }
-        if (thinking) text = text + "\n\nThinking...";
-        bubbleBodyView.setText(text);
-        if (bubbleBodyScrollView != null) {
-            bubbleBodyScrollView.post(() -> bubbleBodyScrollView.fullScroll(View.FOCUS_DOWN));
+        if (thinking) {
+            String preview = streamingReplyPreview;
+            if (status.length() > 0) status.append("\n\n");
+            status.append(preview == null || preview.isEmpty() ? "Thinking..." : "Hitomi: " + preview);
         }
+        // The list's transcript mode keeps the newest message in view.
+        transcript.setStatus(status.toString());
     }
 
     private void scheduleKeyboardAvoidanceHop() {
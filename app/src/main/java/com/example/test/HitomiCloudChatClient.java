@@ -1,31 +1,208 @@
 package ai.agent1c.hitomi;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 public class HitomiCloudChatClient {
     private static final String MODEL = "grok-4-latest";
     private static final String DIRECT_MODEL = "grok-4";
-    private static final String DIRECT_XAI_CHAT_URL = "https://api.x.ai/v1/chat/completions";
+    private static final String DIRECT_XAI_CHAT_URL = BuildConfig.XAI_CHAT_URL;
     private static final double TEMPERATURE = 0.4;
     private static final String OLLAMA_TAGS_PATH = "/api/tags";
     private static final String OLLAMA_CHAT_PATH = "/api/chat";
+    private static final long OLLAMA_MODEL_TTL_MS = 10 * 60 * 1000L;
+    // Matches the overlay's preview render cadence; partials in between would never be drawn.
+    private static final long PARTIAL_INTERVAL_MS = 60L;
 
     private final Context appContext;
     private final HitomiAuthManager authManager;
     private final SolanaWalletClient solanaWalletClient;
     private final String soulTemplate;
     private final String toolsText;
+    private final Map<String, CachedModel> ollamaModelCache = new HashMap<>();
+    private final Object promptLock = new Object();
+    private String storedWalletAddress;
+    private CachedPrompt cachedPrompt;
+    private final SharedPreferences.OnSharedPreferenceChangeListener walletPrefsListener = (prefs, key) -> {
+        if (!SolanaWalletClient.isStoredWalletKey(key)) return;
+        synchronized (promptLock) {
+            storedWalletAddress = null;
+            cachedPrompt = null;
+        }
+    };
+
+    public interface StreamListener {
+        void onPartial(String textSoFar);
+    }
+
+    // One per chat turn. cancel() may come before, during or after any connection of the turn
+    // (model lookup, connect, response code, stream); whichever the turn is in is dropped and
+    // the next check throws CancellationException.
+    public static final class Cancellation {
+        private final Object lock = new Object();
+        private boolean cancelled = false;
+        private HttpURLConnection active;
+        private final List<Runnable> hooks = new ArrayList<>();
+
+        public void cancel() {
+            HttpURLConnection conn;
+            List<Runnable> toRun;
+            synchronized (lock) {
+                if (cancelled) return;
+                cancelled = true;
+                conn = active;
+                toRun = new ArrayList<>(hooks);
+                hooks.clear();
+            }
+            if (conn != null) conn.disconnect();
+            for (Runnable hook : toRun) hook.run();
+        }
+
+        // For work of the same turn that is not an HTTP call, such as tool runs. Runs on the
+        // cancelling thread, or right away if the turn is already cancelled.
+        public void onCancel(Runnable hook) {
+            synchronized (lock) {
+                if (!cancelled) {
+                    hooks.add(hook);
+                    return;
+                }
+            }
+            hook.run();
+        }
+
+        void throwIfCancelled() {
+            synchronized (lock) {
+                if (cancelled) throw new CancellationException("Reply cancelled by a newer message.");
+            }
+        }
+
+        // Call right after opening, before anything that can block on the network.
+        void attach(HttpURLConnection conn) {
+            synchronized (lock) {
+                if (!cancelled) {
+                    active = conn;
+                    return;
+                }
+            }
+            conn.disconnect();
+            throw new CancellationException("Reply cancelled by a newer message.");
+        }
+
+        void detach(HttpURLConnection conn) {
+            synchronized (lock) {
+                if (active == conn) active = null;
+            }
+        }
+    }
+
+    private static final class CachedModel {
+        final String model;
+        final long resolvedAtMs;
+
+        CachedModel(String model, long resolvedAtMs) {
+            this.model = model;
+            this.resolvedAtMs = resolvedAtMs;
+        }
+    }
+
+    private static final class CachedPrompt {
+        final String userName;
+        final String walletAddress;
+        final byte[] systemMessage;
+
+        CachedPrompt(String userName, String walletAddress, byte[] systemMessage) {
+            this.userName = userName;
+            this.walletAddress = walletAddress;
+            this.systemMessage = systemMessage;
+        }
+    }
+
+    // Request JSON whose "messages" starts with the already-encoded system message, so the
+    // large constant prompt is not escaped and re-encoded on every call.
+    private static final class RequestBody {
+        final JSONObject fields;
+        final byte[] systemMessage;
+        final JSONArray history;
+
+        RequestBody(JSONObject fields, byte[] systemMessage, JSONArray history) {
+            this.fields = fields;
+            this.systemMessage = systemMessage;
+            this.history = history;
+        }
+
+        byte[] encode() {
+            String head = fields.toString();
+            head = head.substring(0, head.length() - 1) + (fields.length() == 0 ? "" : ",") + "\"messages\":[";
+            StringBuilder tail = new StringBuilder();
+            for (int i = 0; i < history.length(); i++) {
+                tail.append(',').append(history.opt(i));
+            }
+            tail.append("]}");
+            byte[] headBytes = head.getBytes(StandardCharsets.UTF_8);
+            byte[] tailBytes = tail.toString().getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(headBytes.length + systemMessage.length + tailBytes.length);
+            out.write(headBytes, 0, headBytes.length);
+            out.write(systemMessage, 0, systemMessage.length);
+            out.write(tailBytes, 0, tailBytes.length);
+            return out.toByteArray();
+        }
+    }
+
+    // Hands the listener the reply so far at most every PARTIAL_INTERVAL_MS. Copying the whole
+    // reply on every token would make long replies quadratic.
+    private static final class PartialThrottle {
+        final StreamListener listener;
+        final StringBuilder content = new StringBuilder();
+        long lastAtMs = 0L;
+        boolean pending = false;
+
+        PartialThrottle(StreamListener listener) {
+            this.listener = listener;
+        }
+
+        void append(String piece) {
+            content.append(piece);
+            pending = true;
+            long now = SystemClock.elapsedRealtime();
+            if (now - lastAtMs >= PARTIAL_INTERVAL_MS) flush(now);
+        }
+
+        void flush() {
+            flush(SystemClock.elapsedRealtime());
+        }
+
+        private void flush(long now) {
+            if (!pending) return;
+            pending = false;
+            lastAtMs = now;
+            listener.onPartial(content.toString());
+        }
+    }
+
+    private static final class OllamaModelMissingException extends IllegalStateException {
+        OllamaModelMissingException(String message) {
+            super(message);
+        }
+    }
 
     public HitomiCloudChatClient(Context context) {
         this.appContext = context.getApplicationContext();
@@ -33,31 +210,44 @@ public class HitomiCloudChatClient {
         this.solanaWalletClient = new SolanaWalletClient(appContext);
         this.soulTemplate = readRawText(appContext, R.raw.soul_md);
         this.toolsText = readRawText(appContext, R.raw.tools_md);
+        solanaWalletClient.registerStoredWalletListener(walletPrefsListener);
     }
 
     public String send(JSONArray historyMessages, String userName) throws Exception {
-        String systemPrompt = buildSystemPrompt(userName);
-        JSONArray payloadMessages = new JSONArray();
-        payloadMessages.put(new JSONObject().put("role", "system").put("content", systemPrompt));
-        for (int i = 0; i < historyMessages.length(); i++) {
-            payloadMessages.put(historyMessages.getJSONObject(i));
+        return send(historyMessages, userName, null, new Cancellation());
+    }
+
+    public String send(JSONArray historyMessages, String userName, StreamListener listener, Cancellation cancel) throws Exception {
+        cancel.throwIfCancelled();
+        try {
+            String reply = sendUncancelled(historyMessages, userName, listener, cancel);
+            cancel.throwIfCancelled();
+            return reply;
+        } catch (Exception e) {
+            // A disconnect from cancel() surfaces as whatever the blocked read threw.
+            cancel.throwIfCancelled();
+            throw e;
         }
+    }
 
-        JSONObject body = new JSONObject();
-        body.put("model", BuildConfig.IS_OPEN_VARIANT ? DIRECT_MODEL : MODEL);
-        body.put("temperature", TEMPERATURE);
-        body.put("messages", payloadMessages);
+    private String sendUncancelled(JSONArray historyMessages, String userName, StreamListener listener, Cancellation cancel) throws Exception {
+        byte[] systemMessage = systemMessageBytes(userName);
+        JSONObject fields = new JSONObject();
+        fields.put("model", BuildConfig.IS_OPEN_VARIANT ? DIRECT_MODEL : MODEL);
+        fields.put("temperature", TEMPERATURE);
+        RequestBody body = new RequestBody(fields, systemMessage, historyMessages);
 
         if (BuildConfig.IS_OPEN_VARIANT) {
             String endpoint = authManager.getLocalEndpoint();
             if (!endpoint.isEmpty()) {
-                return sendDirectOllama(payloadMessages, endpoint);
+                return sendOllama(systemMessage, historyMessages, endpoint, listener, cancel);
             }
             String apiKey = authManager.getDirectApiKey();
             if (apiKey.isEmpty()) {
                 throw new IllegalStateException("Please enter an Ollama endpoint or xAI API key first.");
             }
-            return sendDirectXai(body, apiKey, userName);
+            if (listener != null) return streamDirectXai(body, apiKey, userName, listener, cancel);
+            return sendDirectXai(body, apiKey, userName, cancel);
         }
 
         String accessToken = authManager.ensureValidAccessToken();
@@ -65,22 +255,19 @@ public class HitomiCloudChatClient {
             throw new IllegalStateException("Please sign in first.");
         }
 
-        HttpURLConnection conn = (HttpURLConnection) new URL(HitomiAuthManager.CHAT_ENDPOINT_URL).openConnection();
-        conn.setRequestMethod("POST");
-        conn.setConnectTimeout(15000);
-        conn.setReadTimeout(60000);
-        conn.setRequestProperty("Content-Type", "application/json");
+        HttpURLConnection conn = HttpTransport.openJson("POST", HitomiAuthManager.CHAT_ENDPOINT_URL, 15000, 60000);
         conn.setRequestProperty("apikey", HitomiAuthManager.BACKEND_PUBLIC_KEY);
         conn.setRequestProperty("Authorization", "Bearer " + accessToken);
-        conn.setDoOutput(true);
-        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
-        conn.setFixedLengthStreamingMode(bytes.length);
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(bytes);
+        String respText;
+        int code;
+        cancel.attach(conn);
+        try {
+            HttpTransport.writeBody(conn, body.encode());
+            code = conn.getResponseCode();
+            respText = HttpTransport.readBody(conn, code);
+        } finally {
+            cancel.detach(conn);
         }
-
-        int code = conn.getResponseCode();
-        String respText = readAll(code >= 200 && code < 300 ? conn.getInputStream() : conn.getErrorStream());
         JSONObject resp = respText.isEmpty() ? new JSONObject() : new JSONObject(respText);
         if (code < 200 || code >= 300) {
             String errMsg = "";
@@ -103,38 +290,21 @@ public class HitomiCloudChatClient {
         return content.trim();
     }
 
-    private String sendDirectXai(JSONObject body, String apiKey, String userName) throws Exception {
-        HttpURLConnection conn = (HttpURLConnection) new URL(DIRECT_XAI_CHAT_URL).openConnection();
-        conn.setRequestMethod("POST");
-        conn.setConnectTimeout(15000);
-        conn.setReadTimeout(60000);
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setRequestProperty("Authorization", "Bearer " + apiKey);
-        conn.setDoOutput(true);
-        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
-        conn.setFixedLengthStreamingMode(bytes.length);
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(bytes);
+    private String sendDirectXai(RequestBody body, String apiKey, String userName, Cancellation cancel) throws Exception {
+        HttpURLConnection conn = HttpTransport.openJson("POST", DIRECT_XAI_CHAT_URL, 15000, 60000);
+        String respText;
+        int code;
+        cancel.attach(conn);
+        try {
+            writeDirectXai(conn, body, apiKey, false);
+            code = conn.getResponseCode();
+            respText = HttpTransport.readBody(conn, code);
+        } finally {
+            cancel.detach(conn);
         }
-
-        int code = conn.getResponseCode();
-        String respText = readAll(code >= 200 && code < 300 ? conn.getInputStream() : conn.getErrorStream());
         JSONObject resp = respText.isEmpty() ? new JSONObject() : new JSONObject(respText);
         if (code < 200 || code >= 300) {
-            String errMsg = "";
-            JSONObject err = resp.optJSONObject("error");
-            if (err != null) {
-                String ecode = err.optString("code", "");
-                String emsg = err.optString("message", "");
-                errMsg = (ecode.isEmpty() ? "" : " code=" + ecode) + (emsg.isEmpty() ? "" : ": " + emsg);
-            }
-            if (code == 401) {
-                throw new IllegalStateException("Grok API key rejected" + errMsg);
-            }
-            if (code == 429) {
-                return "I ran out of tokens, " + (userName == null || userName.isEmpty() ? "friend" : userName) + ". :(🐷 Let's talk again tomorrow. :)🦔";
-            }
-            throw new IllegalStateException("Grok API call failed (" + code + ")" + errMsg);
+            return handleDirectXaiError(code, resp, userName);
         }
         JSONArray choices = resp.optJSONArray("choices");
         if (choices == null || choices.length() == 0) throw new IllegalStateException("Grok returned no message.");
@@ -144,33 +314,121 @@ public class HitomiCloudChatClient {
         return content.trim();
     }
 
-    private String sendDirectOllama(JSONArray payloadMessages, String endpoint) throws Exception {
-        String model = fetchOllamaModel(endpoint);
-        JSONObject body = new JSONObject();
-        body.put("model", model);
-        body.put("stream", false);
-        body.put("messages", payloadMessages);
-        body.put("options", new JSONObject().put("temperature", TEMPERATURE));
-
-        HttpURLConnection conn = (HttpURLConnection) new URL(buildOllamaUrl(endpoint)).openConnection();
-        conn.setRequestMethod("POST");
-        conn.setConnectTimeout(15000);
-        conn.setReadTimeout(60000);
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
-        conn.setFixedLengthStreamingMode(bytes.length);
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(bytes);
+    private String streamDirectXai(RequestBody body, String apiKey, String userName, StreamListener listener, Cancellation cancel) throws Exception {
+        body.fields.put("stream", true);
+        HttpURLConnection conn = HttpTransport.openJson("POST", DIRECT_XAI_CHAT_URL, 15000, 60000);
+        PartialThrottle partials = new PartialThrottle(listener);
+        cancel.attach(conn);
+        try {
+            writeDirectXai(conn, body, apiKey, true);
+            int code = conn.getResponseCode();
+            if (code < 200 || code >= 300) {
+                String respText = HttpTransport.readAll(conn.getErrorStream());
+                JSONObject resp = respText.isEmpty() ? new JSONObject() : new JSONObject(respText);
+                return handleDirectXaiError(code, resp, userName);
+            }
+            readDirectXaiStream(conn, partials, cancel);
+        } finally {
+            cancel.detach(conn);
         }
+        partials.flush();
+        String text = partials.content.toString().trim();
+        if (text.isEmpty()) throw new IllegalStateException("Grok returned no message.");
+        return text;
+    }
 
-        int code = conn.getResponseCode();
-        String respText = readAll(code >= 200 && code < 300 ? conn.getInputStream() : conn.getErrorStream());
+    private void readDirectXaiStream(HttpURLConnection conn, PartialThrottle partials, Cancellation cancel) throws Exception {
+        InputStream in = conn.getInputStream();
+        try (SseEventReader reader = new SseEventReader(in)) {
+            String data;
+            while ((data = reader.nextData()) != null) {
+                cancel.throwIfCancelled();
+                if ("[DONE]".equals(data.trim())) break;
+                if (data.trim().isEmpty()) continue;
+                JSONObject chunk = new JSONObject(data);
+                JSONObject err = chunk.optJSONObject("error");
+                if (err != null) {
+                    throw new IllegalStateException("Grok stream failed: " + err.optString("message", "unknown error"));
+                }
+                JSONArray choices = chunk.optJSONArray("choices");
+                JSONObject choice = choices == null ? null : choices.optJSONObject(0);
+                JSONObject delta = choice == null ? null : choice.optJSONObject("delta");
+                String piece = delta == null ? "" : delta.optString("content", "");
+                if (piece.isEmpty()) continue;
+                partials.append(piece);
+            }
+            HttpTransport.drain(in);
+        }
+    }
+
+    private static void writeDirectXai(HttpURLConnection conn, RequestBody body, String apiKey, boolean stream) throws Exception {
+        conn.setRequestProperty("Authorization", "Bearer " + apiKey);
+        if (stream) conn.setRequestProperty("Accept", "text/event-stream");
+        HttpTransport.writeBody(conn, body.encode());
+    }
+
+    private String handleDirectXaiError(int code, JSONObject resp, String userName) {
+        String errMsg = "";
+        JSONObject err = resp.optJSONObject("error");
+        if (err != null) {
+            String ecode = err.optString("code", "");
+            String emsg = err.optString("message", "");
+            errMsg = (ecode.isEmpty() ? "" : " code=" + ecode) + (emsg.isEmpty() ? "" : ": " + emsg);
+        }
+        if (code == 401) {
+            throw new IllegalStateException("Grok API key rejected" + errMsg);
+        }
+        if (code == 429) {
+            return "I ran out of tokens, " + (userName == null || userName.isEmpty() ? "friend" : userName) + ". :(🐷 Let's talk again tomorrow. :)🦔";
+        }
+        throw new IllegalStateException("Grok API call failed (" + code + ")" + errMsg);
+    }
+
+    private String sendOllama(byte[] systemMessage, JSONArray historyMessages, String endpoint, StreamListener listener, Cancellation cancel) throws Exception {
+        String pinned = authManager.getLocalModel();
+        if (!pinned.isEmpty()) {
+            return sendDirectOllama(systemMessage, historyMessages, endpoint, pinned, listener, cancel);
+        }
+        String model = resolveOllamaModel(endpoint, cancel);
+        try {
+            return sendDirectOllama(systemMessage, historyMessages, endpoint, model, listener, cancel);
+        } catch (OllamaModelMissingException e) {
+            invalidateOllamaModel(endpoint, model);
+            String fresh = resolveOllamaModel(endpoint, cancel);
+            if (fresh.equals(model)) throw e;
+            return sendDirectOllama(systemMessage, historyMessages, endpoint, fresh, listener, cancel);
+        }
+    }
+
+    private String sendDirectOllama(byte[] systemMessage, JSONArray historyMessages, String endpoint, String model, StreamListener listener, Cancellation cancel) throws Exception {
+        JSONObject fields = new JSONObject();
+        fields.put("model", model);
+        fields.put("stream", listener != null);
+        fields.put("options", new JSONObject().put("temperature", TEMPERATURE));
+        RequestBody body = new RequestBody(fields, systemMessage, historyMessages);
+
+        HttpURLConnection conn = HttpTransport.openJson("POST", buildOllamaUrl(endpoint), 15000, 60000);
+        String respText;
+        int code;
+        cancel.attach(conn);
+        try {
+            HttpTransport.writeBody(conn, body.encode());
+            code = conn.getResponseCode();
+            if (HttpTransport.isSuccess(code) && listener != null) {
+                return readOllamaStream(conn, listener, cancel);
+            }
+            respText = HttpTransport.readBody(conn, code);
+        } finally {
+            cancel.detach(conn);
+        }
         JSONObject resp = respText.isEmpty() ? new JSONObject() : new JSONObject(respText);
         if (code < 200 || code >= 300) {
             String errMsg = resp.optString("error", "");
             if (errMsg.isEmpty()) errMsg = resp.optString("message", "");
             if (errMsg.isEmpty()) errMsg = "unknown error";
+            if (code == 404 && errMsg.contains("not found")) {
+                throw new OllamaModelMissingException("Ollama model \"" + model + "\" is not installed: " + errMsg);
+            }
             throw new IllegalStateException("Ollama call failed (" + code + "): " + errMsg);
         }
         JSONObject msg = resp.optJSONObject("message");
@@ -181,27 +439,92 @@ public class HitomiCloudChatClient {
         return content.trim();
     }
 
-    private String fetchOllamaModel(String endpoint) throws Exception {
-        HttpURLConnection conn = (HttpURLConnection) new URL(buildOllamaTagsUrl(endpoint)).openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(10000);
-        conn.setReadTimeout(30000);
+    private String readOllamaStream(HttpURLConnection conn, StreamListener listener, Cancellation cancel) throws Exception {
+        PartialThrottle partials = new PartialThrottle(listener);
+        InputStream in = conn.getInputStream();
+        try (NdjsonReader reader = new NdjsonReader(in)) {
+            JSONObject chunk;
+            while ((chunk = reader.next()) != null) {
+                cancel.throwIfCancelled();
+                String error = chunk.optString("error", "");
+                if (!error.isEmpty()) throw new IllegalStateException("Ollama call failed: " + error);
+                JSONObject msg = chunk.optJSONObject("message");
+                String piece = msg == null ? "" : msg.optString("content", "");
+                if (!piece.isEmpty()) {
+                    partials.append(piece);
+                }
+                if (chunk.optBoolean("done", false)) break;
+            }
+            HttpTransport.drain(in);
+        }
+        partials.flush();
+        String text = partials.content.toString().trim();
+        if (text.isEmpty()) throw new IllegalStateException("Ollama returned no message.");
+        return text;
+    }
+
+    private String resolveOllamaModel(String endpoint, Cancellation cancel) throws Exception {
+        synchronized (ollamaModelCache) {
+            CachedModel cached = ollamaModelCache.get(endpoint);
+            if (cached != null && SystemClock.elapsedRealtime() - cached.resolvedAtMs < OLLAMA_MODEL_TTL_MS) {
+                return cached.model;
+            }
+        }
+        String model = fetchOllamaModel(endpoint, cancel);
+        synchronized (ollamaModelCache) {
+            ollamaModelCache.put(endpoint, new CachedModel(model, SystemClock.elapsedRealtime()));
+        }
+        return model;
+    }
+
+    private void invalidateOllamaModel(String endpoint, String model) {
+        synchronized (ollamaModelCache) {
+            CachedModel cached = ollamaModelCache.get(endpoint);
+            if (cached != null && cached.model.equals(model)) ollamaModelCache.remove(endpoint);
+        }
+    }
+
+    private String fetchOllamaModel(String endpoint, Cancellation cancel) throws Exception {
+        HttpURLConnection conn = HttpTransport.open("GET", buildOllamaTagsUrl(endpoint), 10000, 30000);
+        cancel.attach(conn);
+        try {
+            return readOllamaModel(conn);
+        } finally {
+            cancel.detach(conn);
+        }
+    }
+
+    private static String readOllamaModel(HttpURLConnection conn) throws Exception {
         int code = conn.getResponseCode();
-        String respText = readAll(code >= 200 && code < 300 ? conn.getInputStream() : conn.getErrorStream());
-        JSONObject resp = respText.isEmpty() ? new JSONObject() : new JSONObject(respText);
-        if (code < 200 || code >= 300) {
+        if (!HttpTransport.isSuccess(code)) {
+            String respText = HttpTransport.readAll(conn.getErrorStream());
+            JSONObject resp = respText.isEmpty() ? new JSONObject() : new JSONObject(respText);
             String errMsg = resp.optString("error", "");
             if (errMsg.isEmpty()) errMsg = resp.optString("message", "");
             throw new IllegalStateException("Could not query Ollama models (" + code + ")" + (errMsg.isEmpty() ? "" : ": " + errMsg));
         }
-        JSONArray models = resp.optJSONArray("models");
-        if (models == null || models.length() == 0) {
-            throw new IllegalStateException("No Ollama models found. Pull one first, for example `ollama pull qwen2.5:3b`.");
+        boolean sawModels = false;
+        String model = "";
+        InputStream in = conn.getInputStream();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (model.isEmpty() && reader.hasNext()) {
+                if (!"models".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (model.isEmpty() && reader.hasNext()) {
+                    sawModels = true;
+                    model = readOllamaModelName(reader);
+                }
+                break;
+            }
+            // Stopped at the first usable name; the rest of the list is not parsed.
+            HttpTransport.drain(in);
         }
-        JSONObject first = models.optJSONObject(0);
-        String model = first == null ? "" : first.optString("model", "").trim();
-        if (model.isEmpty()) {
-            model = first == null ? "" : first.optString("name", "").trim();
+        if (!sawModels) {
+            throw new IllegalStateException("No Ollama models found. Pull one first, for example `ollama pull qwen2.5:3b`.");
         }
         if (model.isEmpty()) {
             throw new IllegalStateException("Ollama returned models, but none had a usable name.");
@@ -209,6 +532,32 @@ public class HitomiCloudChatClient {
         return model;
     }
 
+    // Reads one entry of /api/tags "models", preferring "model" over "name" like the JSON API does.
+    private static String readOllamaModelName(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return "";
+        }
+        String model = "";
+        String name = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (("model".equals(key) || "name".equals(key)) && reader.peek() == JsonToken.STRING) {
+                String value = reader.nextString().trim();
+                if ("model".equals(key)) {
+                    model = value;
+                } else {
+                    name = value;
+                }
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return model.isEmpty() ? name : model;
+    }
+
     private static String buildOllamaUrl(String endpoint) {
         if (endpoint.endsWith("/api/chat")) return endpoint;
         return endpoint + OLLAMA_CHAT_PATH;
@@ -221,14 +570,40 @@ public class HitomiCloudChatClient {
         return endpoint + OLLAMA_TAGS_PATH;
     }
 
-    private String buildSystemPrompt(String userName) {
+    private byte[] systemMessageBytes(String userName) throws Exception {
         String safeName = (userName == null || userName.trim().isEmpty()) ? "friend" : userName.trim();
+        String walletAddress;
+        synchronized (promptLock) {
+            if (storedWalletAddress == null) {
+                SolanaWalletClient.StoredWallet storedWallet = solanaWalletClient.getStoredWallet();
+                storedWalletAddress = storedWallet == null ? "" : storedWallet.address;
+            }
+            walletAddress = storedWalletAddress;
+            CachedPrompt cached = cachedPrompt;
+            if (cached != null && cached.userName.equals(safeName) && cached.walletAddress.equals(walletAddress)) {
+                return cached.systemMessage;
+            }
+        }
+        String prompt = buildSystemPrompt(safeName, walletAddress);
+        byte[] systemMessage = new JSONObject()
+            .put("role", "system")
+            .put("content", prompt)
+            .toString()
+            .getBytes(StandardCharsets.UTF_8);
+        synchronized (promptLock) {
+            // Only cache if the wallet did not change while the prompt was being rendered.
+            if (walletAddress.equals(storedWalletAddress)) {
+                cachedPrompt = new CachedPrompt(safeName, walletAddress, systemMessage);
+            }
+        }
+        return systemMessage;
+    }
+
+    private String buildSystemPrompt(String safeName, String walletAddress) {
         StringBuilder prompt = new StringBuilder();
         prompt.append(soulTemplate.replace("{user_name}", safeName))
             .append("\n\n")
             .append(toolsText);
-        SolanaWalletClient.StoredWallet storedWallet = solanaWalletClient.getStoredWallet();
-        String walletAddress = storedWallet == null ? "" : storedWallet.address;
         if (walletAddress != null && !walletAddress.trim().isEmpty()) {
             prompt.append("\n\n")
                 .append("Runtime note: the user is connected with Solana wallet \"")
@@ -254,14 +629,4 @@ public class HitomiCloudChatClient {
             return "";
         }
     }
-
-    private static String readAll(InputStream stream) throws Exception {
-        if (stream == null) return "";
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = br.readLine()) != null) sb.append(line);
-        }
-        return sb.toString();
-    }
 }
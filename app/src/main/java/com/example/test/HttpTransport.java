@@ -0,0 +1,74 @@
+package ai.agent1c.hitomi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+// Android's HttpURLConnection keeps idle sockets in a process-wide keep-alive pool and
+// negotiates gzip responses on its own, as long as callers leave Accept-Encoding alone,
+// read each body to the end and close the stream instead of calling disconnect(). A parser
+// that stops before the end (a stream's done marker, an early match) drains the rest.
+public final class HttpTransport {
+    private static final int BUFFER_SIZE = 8192;
+
+    private HttpTransport() {
+    }
+
+    public static HttpURLConnection open(String method, String url, int connectTimeoutMs, int readTimeoutMs) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(connectTimeoutMs);
+        conn.setReadTimeout(readTimeoutMs);
+        return conn;
+    }
+
+    public static HttpURLConnection openJson(String method, String url, int connectTimeoutMs, int readTimeoutMs) throws IOException {
+        HttpURLConnection conn = open(method, url, connectTimeoutMs, readTimeoutMs);
+        conn.setRequestProperty("Content-Type", "application/json");
+        return conn;
+    }
+
+    public static void writeBody(HttpURLConnection conn, String body) throws IOException {
+        writeBody(conn, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void writeBody(HttpURLConnection conn, byte[] bytes) throws IOException {
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(bytes.length);
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(bytes);
+        }
+    }
+
+    public static boolean isSuccess(int code) {
+        return code >= 200 && code < 300;
+    }
+
+    public static String readBody(HttpURLConnection conn, int code) throws IOException {
+        return readAll(isSuccess(code) ? conn.getInputStream() : conn.getErrorStream());
+    }
+
+    // Reads and drops what is left of a body so its connection can go back to the pool.
+    public static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (in.read(buffer) != -1) {
+        }
+    }
+
+    public static String readAll(InputStream stream) throws IOException {
+        if (stream == null) return "";
+        try (InputStream in = stream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
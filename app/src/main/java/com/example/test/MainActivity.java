@@ -99,6 +99,14 @@ public class MainActivity extends AppCompatActivity {
         }
         signOutButton.setOnClickListener(v -> {
             authManager.signOut();
+            // The next account must not see or send this one's chat, shell output or wallet replies.
+            if (HedgehogOverlayService.isOverlayRunning()) {
+                Intent intent = new Intent(this, HedgehogOverlayService.class);
+                intent.setAction(HedgehogOverlayService.ACTION_STOP);
+                startService(intent);
+            } else {
+                HedgehogOverlayService.deleteSessionLog(this);
+            }
             if (apiKeyInput != null) apiKeyInput.setText("");
             refreshAuthStatus();
             statusText.setText("Status: signed out");
@@ -580,10 +588,10 @@ public class MainActivity extends AppCompatActivity {
         if (!BuildConfig.IS_OPEN_VARIANT) return;
         if (authTitleText != null) authTitleText.setText("Enter an Ollama endpoint or xAI API key:");
         if (authHintText != null) {
-            authHintText.setText("Use http://127.0.0.1:11434 for local Ollama, or paste an xAI API key. This stays on this device.");
+            authHintText.setText("Use http://127.0.0.1:11434 for local Ollama (add a model name after a space to pin it), or paste an xAI API key. This stays on this device.");
         }
         if (apiKeyInput != null) {
-            String savedValue = authManager.isUsingLocalEndpoint() ? authManager.getLocalEndpoint() : authManager.getDirectApiKey();
+            String savedValue = authManager.getConnectionInput();
             if (!savedValue.isEmpty()) apiKeyInput.setText(savedValue);
         }
     }
@@ -0,0 +1,34 @@
+package ai.agent1c.hitomi;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+public final class NdjsonReader implements Closeable {
+    private final BufferedReader reader;
+
+    public NdjsonReader(InputStream stream) {
+        this.reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    // Returns the next JSON object as soon as its line arrives, or null at end of stream.
+    public JSONObject next() throws Exception {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) continue;
+            return new JSONObject(trimmed);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,164 @@
+package ai.agent1c.hitomi;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Per-endpoint latency and error averages, kept across restarts so the wallet tool asks
+// the node that has actually been fast from this device first.
+public final class RpcHealthTable {
+    private static final double ALPHA = 0.3;
+    private static final long UNKNOWN_LATENCY_MS = 800L;
+    private static final int BREAKER_FAILURES = 3;
+    private static final long BREAKER_BASE_COOLDOWN_MS = 30_000L;
+    private static final long BREAKER_MAX_COOLDOWN_MS = 10 * 60_000L;
+
+    private final SharedPreferences prefs;
+    private final String prefsKey;
+    private final Map<String, Health> entries = new HashMap<>();
+    private boolean loaded = false;
+
+    private static final class Health {
+        double latencyMs = UNKNOWN_LATENCY_MS;
+        double errorRate = 0d;
+        long lastFailureAt = 0L;
+        int consecutiveFailures = 0;
+        long openUntil = 0L;
+
+        double score() {
+            return latencyMs * (1d + 4d * errorRate);
+        }
+
+        JSONObject toJson() throws Exception {
+            return new JSONObject()
+                .put("latencyMs", latencyMs)
+                .put("errorRate", errorRate)
+                .put("lastFailureAt", lastFailureAt)
+                .put("consecutiveFailures", consecutiveFailures)
+                .put("openUntil", openUntil);
+        }
+
+        static Health fromJson(JSONObject json) {
+            Health health = new Health();
+            health.latencyMs = json.optDouble("latencyMs", UNKNOWN_LATENCY_MS);
+            health.errorRate = json.optDouble("errorRate", 0d);
+            health.lastFailureAt = json.optLong("lastFailureAt", 0L);
+            health.consecutiveFailures = json.optInt("consecutiveFailures", 0);
+            health.openUntil = json.optLong("openUntil", 0L);
+            return health;
+        }
+    }
+
+    public RpcHealthTable(SharedPreferences prefs, String prefsKey) {
+        this.prefs = prefs;
+        this.prefsKey = prefsKey;
+    }
+
+    // Healthy endpoints by score, then endpoints whose breaker is open by how soon it closes.
+    // Ties keep the caller's order, so the configured preference still decides for new nodes.
+    public synchronized String[] order(String[] endpoints) {
+        load();
+        long now = System.currentTimeMillis();
+        List<String> sorted = new ArrayList<>(Arrays.asList(endpoints));
+        Collections.sort(sorted, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                Health ha = entries.get(a);
+                Health hb = entries.get(b);
+                boolean openA = ha != null && ha.openUntil > now;
+                boolean openB = hb != null && hb.openUntil > now;
+                if (openA != openB) return openA ? 1 : -1;
+                if (openA) return Long.compare(ha.openUntil, hb.openUntil);
+                double scoreA = ha == null ? UNKNOWN_LATENCY_MS : ha.score();
+                double scoreB = hb == null ? UNKNOWN_LATENCY_MS : hb.score();
+                return Double.compare(scoreA, scoreB);
+            }
+        });
+        return sorted.toArray(new String[0]);
+    }
+
+    public synchronized boolean isOpen(String endpoint) {
+        load();
+        Health health = entries.get(endpoint);
+        return health != null && health.openUntil > System.currentTimeMillis();
+    }
+
+    public synchronized void recordSuccess(String endpoint, long latencyMs) {
+        Health health = health(endpoint);
+        health.latencyMs += ALPHA * (latencyMs - health.latencyMs);
+        health.errorRate += ALPHA * (0d - health.errorRate);
+        health.consecutiveFailures = 0;
+        health.openUntil = 0L;
+    }
+
+    // An attempt that lost the race was still waiting after latencyMs; count that as a
+    // lower bound so a node that never wins sinks below the ones that do.
+    public synchronized void recordUnfinished(String endpoint, long latencyMs) {
+        Health health = health(endpoint);
+        if (latencyMs > health.latencyMs) {
+            health.latencyMs += ALPHA * (latencyMs - health.latencyMs);
+        }
+    }
+
+    public synchronized void recordFailure(String endpoint, long latencyMs) {
+        Health health = health(endpoint);
+        long now = System.currentTimeMillis();
+        health.latencyMs += ALPHA * (Math.max(latencyMs, health.latencyMs) - health.latencyMs);
+        health.errorRate += ALPHA * (1d - health.errorRate);
+        health.lastFailureAt = now;
+        health.consecutiveFailures++;
+        if (health.consecutiveFailures >= BREAKER_FAILURES) {
+            int doublings = Math.min(health.consecutiveFailures - BREAKER_FAILURES, 8);
+            health.openUntil = now + Math.min(BREAKER_MAX_COOLDOWN_MS, BREAKER_BASE_COOLDOWN_MS << doublings);
+        }
+    }
+
+    public synchronized void save(List<String> knownEndpoints) {
+        JSONObject out = new JSONObject();
+        try {
+            for (Map.Entry<String, Health> entry : entries.entrySet()) {
+                if (!knownEndpoints.contains(entry.getKey())) continue;
+                out.put(entry.getKey(), entry.getValue().toJson());
+            }
+        } catch (Exception ignored) {
+            return;
+        }
+        prefs.edit().putString(prefsKey, out.toString()).apply();
+    }
+
+    private Health health(String endpoint) {
+        load();
+        Health health = entries.get(endpoint);
+        if (health == null) {
+            health = new Health();
+            entries.put(endpoint, health);
+        }
+        return health;
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        String raw = prefs.getString(prefsKey, "");
+        if (raw == null || raw.trim().isEmpty()) return;
+        try {
+            JSONObject json = new JSONObject(raw);
+            Iterator<String> keys = json.keys();
+            while (keys.hasNext()) {
+                String endpoint = keys.next();
+                JSONObject item = json.optJSONObject(endpoint);
+                if (item != null) entries.put(endpoint, Health.fromJson(item));
+            }
+        } catch (Exception ignored) {
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package ai.agent1c.hitomi;
+
+import android.util.Base64;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+// Just enough RFC 6455 for JSON-RPC subscriptions: one text message at a time, masked client
+// frames, ping/pong and close. No extensions, no binary messages.
+public final class RpcWebSocket {
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+    private static final int MAX_MESSAGE_BYTES = 4 * 1024 * 1024;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final SecureRandom random = new SecureRandom();
+    private final Object writeLock = new Object();
+
+    private RpcWebSocket(Socket socket, InputStream in, OutputStream out) {
+        this.socket = socket;
+        this.in = in;
+        this.out = out;
+    }
+
+    // readTimeoutMs bounds each readText() call so the caller can send keep-alive pings.
+    public static RpcWebSocket connect(String url, int connectTimeoutMs, int readTimeoutMs) throws IOException {
+        URI uri = URI.create(url);
+        boolean secure = "wss".equalsIgnoreCase(uri.getScheme());
+        if (!secure && !"ws".equalsIgnoreCase(uri.getScheme())) {
+            throw new IllegalStateException("Not a WebSocket URL: " + url);
+        }
+        String host = uri.getHost();
+        int port = uri.getPort() > 0 ? uri.getPort() : (secure ? 443 : 80);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) path += "?" + uri.getRawQuery();
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            if (secure) {
+                SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                    .createSocket(socket, host, port, true);
+                ssl.startHandshake();
+                if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(host, ssl.getSession())) {
+                    throw new IOException("WebSocket certificate does not match " + host);
+                }
+                socket = ssl;
+            }
+            socket.setSoTimeout(readTimeoutMs);
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+
+            byte[] nonce = new byte[16];
+            new SecureRandom().nextBytes(nonce);
+            String key = Base64.encodeToString(nonce, Base64.NO_WRAP);
+            String hostHeader = uri.getPort() > 0 ? host + ":" + port : host;
+            String request = "GET " + path + " HTTP/1.1\r\n"
+                + "Host: " + hostHeader + "\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: " + key + "\r\n"
+                + "Sec-WebSocket-Version: 13\r\n\r\n";
+            out.write(request.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            String status = readLine(in);
+            if (!status.startsWith("HTTP/1.1 101")) {
+                throw new IOException("WebSocket upgrade refused: " + status);
+            }
+            String expectedAccept = Base64.encodeToString(
+                MessageDigest.getInstance("SHA-1").digest((key + GUID).getBytes(StandardCharsets.UTF_8)),
+                Base64.NO_WRAP);
+            boolean accepted = false;
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Accept")) {
+                    accepted = expectedAccept.equals(line.substring(colon + 1).trim());
+                }
+            }
+            if (!accepted) throw new IOException("WebSocket upgrade returned a bad Sec-WebSocket-Accept");
+            return new RpcWebSocket(socket, in, out);
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        } catch (Exception e) {
+            closeQuietly(socket);
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    public void sendText(String text) throws IOException {
+        sendFrame(OP_TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void ping() throws IOException {
+        sendFrame(OP_PING, new byte[0]);
+    }
+
+    // Next text message, or null when the server closed the socket. Pings are answered here.
+    // Throws SocketTimeoutException when nothing arrived within the read timeout.
+    public String readText() throws IOException {
+        ByteArrayOutputStream message = null;
+        while (true) {
+            int b0 = in.read();
+            if (b0 < 0) return null;
+            int b1 = readByte();
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0F;
+            long length = b1 & 0x7F;
+            if (length == 126) {
+                length = ((long) readByte() << 8) | readByte();
+            } else if (length == 127) {
+                length = 0;
+                for (int i = 0; i < 8; i++) length = (length << 8) | readByte();
+            }
+            if (length > MAX_MESSAGE_BYTES) throw new IOException("WebSocket frame too large");
+            byte[] mask = null;
+            if ((b1 & 0x80) != 0) {
+                mask = new byte[4];
+                readFully(mask);
+            }
+            byte[] payload = new byte[(int) length];
+            readFully(payload);
+            if (mask != null) {
+                for (int i = 0; i < payload.length; i++) payload[i] ^= mask[i & 3];
+            }
+            if (opcode == OP_PING) {
+                sendFrame(OP_PONG, payload);
+            } else if (opcode == OP_CLOSE) {
+                try {
+                    sendFrame(OP_CLOSE, new byte[0]);
+                } catch (IOException ignored) {
+                }
+                return null;
+            } else if (opcode == OP_TEXT || (opcode == OP_CONTINUATION && message != null)) {
+                if (message == null) message = new ByteArrayOutputStream(payload.length);
+                message.write(payload, 0, payload.length);
+                if (message.size() > MAX_MESSAGE_BYTES) throw new IOException("WebSocket message too large");
+                if (fin) return new String(message.toByteArray(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    public void close() {
+        try {
+            sendFrame(OP_CLOSE, new byte[0]);
+        } catch (IOException ignored) {
+        }
+        closeQuietly(socket);
+    }
+
+    private void sendFrame(int opcode, byte[] payload) throws IOException {
+        byte[] mask = new byte[4];
+        random.nextBytes(mask);
+        int length = payload.length;
+        int headerLength = 2 + (length < 126 ? 0 : length <= 0xFFFF ? 2 : 8) + 4;
+        byte[] frame = new byte[headerLength + length];
+        int pos = 0;
+        frame[pos++] = (byte) (0x80 | opcode);
+        if (length < 126) {
+            frame[pos++] = (byte) (0x80 | length);
+        } else if (length <= 0xFFFF) {
+            frame[pos++] = (byte) (0x80 | 126);
+            frame[pos++] = (byte) (length >>> 8);
+            frame[pos++] = (byte) length;
+        } else {
+            frame[pos++] = (byte) (0x80 | 127);
+            for (int shift = 56; shift >= 0; shift -= 8) frame[pos++] = (byte) ((long) length >>> shift);
+        }
+        System.arraycopy(mask, 0, frame, pos, 4);
+        pos += 4;
+        for (int i = 0; i < length; i++) frame[pos + i] = (byte) (payload[i] ^ mask[i & 3]);
+        synchronized (writeLock) {
+            out.write(frame);
+            out.flush();
+        }
+    }
+
+    // Only the first byte of a frame may time out; a timeout in the middle of a frame would
+    // leave the stream out of sync, so it is treated as a dropped connection.
+    private int readByte() throws IOException {
+        int b;
+        try {
+            b = in.read();
+        } catch (SocketTimeoutException e) {
+            throw new EOFException("WebSocket stalled mid-frame");
+        }
+        if (b < 0) throw new EOFException("WebSocket closed");
+        return b;
+    }
+
+    private void readFully(byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read;
+            try {
+                read = in.read(buffer, offset, buffer.length - offset);
+            } catch (SocketTimeoutException e) {
+                throw new EOFException("WebSocket stalled mid-frame");
+            }
+            if (read < 0) throw new EOFException("WebSocket closed");
+            offset += read;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+            if (line.size() > 8192) throw new IOException("WebSocket handshake line too long");
+        }
+        if (b == -1 && line.size() == 0) throw new EOFException("WebSocket closed during handshake");
+        return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
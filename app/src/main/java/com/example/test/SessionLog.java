@@ -0,0 +1,229 @@
+package ai.agent1c.hitomi;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Append-only log of the overlay session. Each record is
+// [int length][byte type][UTF-8 payload][int length]; the trailing length lets the
+// tail be read backwards without scanning the whole file.
+public final class SessionLog {
+    private static final String TAG = "HitomiSessionLog";
+    public static final byte TYPE_TRANSCRIPT = 1;
+    public static final byte TYPE_TERMINAL = 2;
+    public static final byte TYPE_HISTORY_USER = 3;
+    public static final byte TYPE_HISTORY_ASSISTANT = 4;
+    public static final byte TYPE_HISTORY_TOOL = 5;
+
+    private static final int RECORD_OVERHEAD = 9;
+    private static final int MAX_RECORD_BYTES = 256 * 1024;
+    private static final long COMPACT_ABOVE_BYTES = 512 * 1024L;
+    // Hard stop for a tail walk whatever the visitor says; well under COMPACT_ABOVE_BYTES so
+    // a compacted log does not need compacting again on the next start.
+    private static final long MAX_TAIL_BYTES = 192 * 1024L;
+
+    private final File file;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private FileOutputStream out;
+    private boolean checkedTail = false;
+    private boolean deleted = false;
+    // Length of the log before this instance wrote to it; loadTail only reads below it, so a
+    // line appended while the restore was queued is not restored on top of itself.
+    private long previousSessionsEnd = 0L;
+
+    public interface TailVisitor {
+        // Called newest record first. Return false once enough of the tail has been seen.
+        boolean visit(byte type, String text);
+    }
+
+    public static final class Record {
+        public final byte type;
+        public final String text;
+
+        Record(byte type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+    }
+
+    public SessionLog(File file) {
+        this.file = file;
+    }
+
+    public void append(byte type, String text) {
+        if (text == null || text.isEmpty()) return;
+        byte[] record = encode(type, text);
+        if (record == null) return;
+        ioExecutor.execute(() -> {
+            if (deleted) return;
+            try {
+                ensureTailChecked();
+                if (out == null) out = new FileOutputStream(file, true);
+                out.write(record);
+            } catch (IOException e) {
+                Log.w(TAG, "append failed", e);
+                closeQuietly();
+            }
+        });
+    }
+
+    // Walks the log backwards from where earlier sessions left it, for at most MAX_TAIL_BYTES.
+    // Returns the visited records oldest first. A log that has grown large is rewritten down
+    // to them, followed by whatever this session has appended so far.
+    public List<Record> loadTail(TailVisitor visitor) {
+        try {
+            return ioExecutor.submit(() -> {
+                ensureTailChecked();
+                List<Record> tail = readTail(visitor);
+                if (file.length() > COMPACT_ABOVE_BYTES) rewrite(tail);
+                return tail;
+            }).get();
+        } catch (Exception e) {
+            Log.w(TAG, "loadTail failed", e);
+            return new ArrayList<>();
+        }
+    }
+
+    // Drops everything logged so far, this session's records included; later appends start a
+    // new log.
+    public void clear() {
+        ioExecutor.execute(this::deleteFile);
+    }
+
+    // Drops the log for good: an explicit end of the session, after which nothing written by
+    // a reply still finishing should bring it back.
+    public void delete() {
+        ioExecutor.execute(() -> {
+            deleted = true;
+            deleteFile();
+        });
+    }
+
+    public void close() {
+        ioExecutor.execute(this::closeQuietly);
+        ioExecutor.shutdown();
+    }
+
+    private List<Record> readTail(TailVisitor visitor) throws IOException {
+        List<Record> tail = new ArrayList<>();
+        if (!file.exists()) return tail;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long end = Math.min(previousSessionsEnd, raf.length());
+            long pos = end;
+            while (pos >= RECORD_OVERHEAD && end - pos < MAX_TAIL_BYTES) {
+                raf.seek(pos - 4);
+                int len = raf.readInt();
+                long start = pos - RECORD_OVERHEAD - len;
+                if (len < 0 || start < 0) break;
+                raf.seek(start);
+                if (raf.readInt() != len) break;
+                byte type = raf.readByte();
+                byte[] payload = new byte[len];
+                raf.readFully(payload);
+                Record record = new Record(type, new String(payload, StandardCharsets.UTF_8));
+                tail.add(record);
+                pos = start;
+                if (!visitor.visit(record.type, record.text)) break;
+            }
+        }
+        Collections.reverse(tail);
+        return tail;
+    }
+
+    // A process killed mid-write can leave a torn record at the end; cut the file back to
+    // the last complete record so later appends stay readable.
+    private void ensureTailChecked() throws IOException {
+        if (checkedTail) return;
+        checkedTail = true;
+        if (!file.exists()) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            previousSessionsEnd = length;
+            if (length == 0 || lastRecordIsComplete(raf, length)) return;
+            long good = 0;
+            while (good + RECORD_OVERHEAD <= length) {
+                raf.seek(good);
+                int len = raf.readInt();
+                long end = good + RECORD_OVERHEAD + len;
+                if (len < 0 || end > length) break;
+                raf.seek(end - 4);
+                if (raf.readInt() != len) break;
+                good = end;
+            }
+            Log.w(TAG, "truncating torn session log from " + length + " to " + good);
+            raf.setLength(good);
+            previousSessionsEnd = good;
+        }
+    }
+
+    private static boolean lastRecordIsComplete(RandomAccessFile raf, long length) throws IOException {
+        if (length < RECORD_OVERHEAD) return false;
+        raf.seek(length - 4);
+        int len = raf.readInt();
+        long start = length - RECORD_OVERHEAD - len;
+        if (len < 0 || start < 0) return false;
+        raf.seek(start);
+        return raf.readInt() == len;
+    }
+
+    private void rewrite(List<Record> tail) throws IOException {
+        closeQuietly();
+        File tmp = new File(file.getPath() + ".tmp");
+        long kept = 0L;
+        try (FileOutputStream tmpOut = new FileOutputStream(tmp, false)) {
+            for (Record record : tail) {
+                byte[] bytes = encode(record.type, record.text);
+                if (bytes == null) continue;
+                tmpOut.write(bytes);
+                kept += bytes.length;
+            }
+            // Records this session appended before the restore ran stay, after the tail.
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                byte[] chunk = new byte[8192];
+                raf.seek(previousSessionsEnd);
+                int n;
+                while ((n = raf.read(chunk)) > 0) tmpOut.write(chunk, 0, n);
+            }
+            tmpOut.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("could not replace " + file);
+        }
+        previousSessionsEnd = kept;
+    }
+
+    private void deleteFile() {
+        closeQuietly();
+        checkedTail = true;
+        previousSessionsEnd = 0L;
+        if (file.exists() && !file.delete()) Log.w(TAG, "could not delete " + file);
+    }
+
+    private void closeQuietly() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+
+    private static byte[] encode(byte type, String text) {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        if (payload.length > MAX_RECORD_BYTES) return null;
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length);
+        buffer.putInt(payload.length).put(type).put(payload).putInt(payload.length);
+        return buffer.array();
+    }
+}
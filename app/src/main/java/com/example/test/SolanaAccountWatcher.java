@@ -0,0 +1,173 @@
+package ai.agent1c.hitomi;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+// Holds one WebSocket to an RPC node with accountSubscribe (balance) and logsSubscribe
+// (new transactions mentioning the wallet) for a single address, reconnecting with backoff.
+public final class SolanaAccountWatcher {
+    private static final String TAG = "HitomiSolanaWs";
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int PING_INTERVAL_MS = 30000;
+    private static final long MIN_BACKOFF_MS = 1000L;
+    private static final long MAX_BACKOFF_MS = 60000L;
+    private static final int ACCOUNT_SUBSCRIBE_ID = 1;
+    private static final int LOGS_SUBSCRIBE_ID = 2;
+
+    private final String wsUrl;
+    private final String address;
+    private final Listener listener;
+    private final Object lock = new Object();
+    private Thread thread;
+    private RpcWebSocket socket;
+    private boolean stopped = false;
+
+    public interface Listener {
+        void onBalance(String address, long lamports);
+
+        void onTransaction(String address, String signature);
+
+        // Both subscriptions are live again. Anything pushed while the socket was down is
+        // lost, so this is the point to catch up.
+        void onSubscribed(String address);
+    }
+
+    public SolanaAccountWatcher(String wsUrl, String address, Listener listener) {
+        this.wsUrl = wsUrl;
+        this.address = address;
+        this.listener = listener;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (thread != null || stopped) return;
+            thread = new Thread(this::runLoop, "hitomi-solana-ws");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void stop() {
+        RpcWebSocket current;
+        Thread worker;
+        synchronized (lock) {
+            stopped = true;
+            current = socket;
+            worker = thread;
+            socket = null;
+        }
+        if (current != null) current.close();
+        if (worker != null) worker.interrupt();
+    }
+
+    private boolean isStopped() {
+        synchronized (lock) {
+            return stopped;
+        }
+    }
+
+    private void runLoop() {
+        long backoffMs = MIN_BACKOFF_MS;
+        while (!isStopped()) {
+            int confirmed = 0;
+            try {
+                RpcWebSocket ws = RpcWebSocket.connect(wsUrl, CONNECT_TIMEOUT_MS, PING_INTERVAL_MS);
+                synchronized (lock) {
+                    if (stopped) {
+                        ws.close();
+                        return;
+                    }
+                    socket = ws;
+                }
+                ws.sendText(subscribeRequest(ACCOUNT_SUBSCRIBE_ID, "accountSubscribe", new JSONArray()
+                    .put(address)
+                    .put(new JSONObject().put("commitment", "confirmed").put("encoding", "base64"))));
+                ws.sendText(subscribeRequest(LOGS_SUBSCRIBE_ID, "logsSubscribe", new JSONArray()
+                    .put(new JSONObject().put("mentions", new JSONArray().put(address)))
+                    .put(new JSONObject().put("commitment", "confirmed"))));
+                boolean pingPending = false;
+                while (!isStopped()) {
+                    String text;
+                    try {
+                        text = ws.readText();
+                    } catch (SocketTimeoutException e) {
+                        // Quiet for a whole interval: ping once, and give up if it stays quiet.
+                        if (pingPending) throw new IOException("WebSocket stopped answering pings");
+                        ws.ping();
+                        pingPending = true;
+                        continue;
+                    }
+                    if (text == null) break;
+                    pingPending = false;
+                    if (handleMessage(text) && ++confirmed == 2) {
+                        backoffMs = MIN_BACKOFF_MS;
+                        listener.onSubscribed(address);
+                    }
+                }
+            } catch (Exception e) {
+                if (!isStopped()) Log.w(TAG, "Solana WebSocket dropped: " + e.getMessage());
+            } finally {
+                RpcWebSocket current;
+                synchronized (lock) {
+                    current = socket;
+                    socket = null;
+                }
+                if (current != null) current.close();
+            }
+            if (isStopped()) return;
+            long delayMs = backoffMs / 2 + (long) (Math.random() * (backoffMs / 2));
+            backoffMs = Math.min(MAX_BACKOFF_MS, backoffMs * 2);
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Returns true for a successful subscribe response.
+    private boolean handleMessage(String text) {
+        JSONObject message;
+        try {
+            message = new JSONObject(text);
+        } catch (Exception e) {
+            return false;
+        }
+        if (message.has("id")) {
+            if (!message.isNull("error")) {
+                JSONObject error = message.optJSONObject("error");
+                throw new IllegalStateException(error == null ? "Subscription failed" : error.optString("message", "Subscription failed"));
+            }
+            return true;
+        }
+        JSONObject result = message.optJSONObject("params") == null ? null : message.optJSONObject("params").optJSONObject("result");
+        JSONObject value = result == null ? null : result.optJSONObject("value");
+        if (value == null) return false;
+        String method = message.optString("method", "");
+        if ("accountNotification".equals(method) && value.has("lamports")) {
+            listener.onBalance(address, value.optLong("lamports", 0L));
+        } else if ("logsNotification".equals(method)) {
+            String signature = value.optString("signature", "").trim();
+            if (!signature.isEmpty()) listener.onTransaction(address, signature);
+        }
+        return false;
+    }
+
+    private static String subscribeRequest(int id, String method, JSONArray params) throws Exception {
+        return new JSONObject()
+            .put("jsonrpc", "2.0")
+            .put("id", id)
+            .put("method", method)
+            .put("params", params)
+            .toString();
+    }
+}
@@ -2,34 +2,73 @@ package ai.agent1c.hitomi;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.SystemClock;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class SolanaWalletClient {
     private static final String PREFS = "hitomi_solana_wallet";
     private static final String K_LAST_SNAPSHOT = "last_snapshot";
     private static final String K_WALLET_NAME = "wallet_name";
     private static final String K_WALLET_ADDRESS = "wallet_address";
+    private static final String K_RPC_HEALTH = "rpc_health";
+    private static final String K_LIVE_UPDATES = "live_updates";
+    public static final int RECENT_TRANSACTION_LIMIT = 10;
+    // getSignaturesForAddress allows up to 1000 per call; catching up stops after this many
+    // pages and records the rest as a gap in the ledger.
+    private static final int SIGNATURE_PAGE_LIMIT = 1000;
+    private static final int MAX_SIGNATURE_PAGES = 4;
+    public static final long DEFAULT_OVERVIEW_FRESH_MS = 60_000L;
+    private static final long HEDGE_DELAY_MS = 1500L;
     private static final String RPC_DEFAULT = "https://api.mainnet-beta.solana.com";
     private static final String[] RPC_FALLBACKS = new String[] {
         "https://api.mainnet-beta.solana.com",
         "https://solana-rpc.publicnode.com",
         "https://rpc.ankr.com/solana"
     };
+    // Debug builds can point at local stand-ins with -PsolanaRpcUrls=url1,url2.
+    private static final String[] RPC_OVERRIDES = splitUrls(BuildConfig.SOLANA_RPC_URLS);
+    private static final ExecutorService RPC_EXECUTOR = Executors.newCachedThreadPool();
+
+    private static RpcHealthTable sharedRpcHealth;
+
+    private static final Set<String> BACKGROUND_REFRESHES = new HashSet<>();
+    private static final Set<String> BACKGROUND_RERUNS = new HashSet<>();
 
     private final SharedPreferences prefs;
+    private final RpcHealthTable rpcHealth;
+    private final WalletLedgerStore ledgerStore;
+    private volatile long overviewFreshMs = DEFAULT_OVERVIEW_FRESH_MS;
+    private volatile SnapshotListener snapshotListener;
+    private SolanaAccountWatcher accountWatcher;
+
+    public interface SnapshotListener {
+        void onSnapshotUpdated(WalletSnapshot snapshot);
+    }
 
     public SolanaWalletClient(Context context) {
         this.prefs = context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.rpcHealth = sharedRpcHealth(prefs);
+        this.ledgerStore = WalletLedgerStore.get(context);
+    }
+
+    // One table per process so the overlay and the chat client learn from each other's refreshes.
+    private static synchronized RpcHealthTable sharedRpcHealth(SharedPreferences prefs) {
+        if (sharedRpcHealth == null) sharedRpcHealth = new RpcHealthTable(prefs, K_RPC_HEALTH);
+        return sharedRpcHealth;
     }
 
     public StoredWallet getStoredWallet() {
@@ -39,6 +78,15 @@ public class SolanaWalletClient {
         return new StoredWallet(name, address);
     }
 
+    // SharedPreferences only keeps a weak reference; callers must hold on to the listener.
+    public void registerStoredWalletListener(SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        prefs.registerOnSharedPreferenceChangeListener(listener);
+    }
+
+    public static boolean isStoredWalletKey(String key) {
+        return key == null || K_WALLET_ADDRESS.equals(key);
+    }
+
     public boolean hasStoredWallet() {
         StoredWallet wallet = getStoredWallet();
         return wallet != null && !wallet.address.isEmpty();
@@ -63,6 +111,7 @@ public class SolanaWalletClient {
             .remove(K_WALLET_ADDRESS)
             .remove(K_LAST_SNAPSHOT)
             .apply();
+        RPC_EXECUTOR.execute(ledgerStore::clear);
     }
 
     public WalletSnapshot getOverviewForStoredWallet() {
@@ -75,10 +124,131 @@ public class SolanaWalletClient {
         return wallet == null ? WalletSnapshot.error("", "No stored Solana wallet") : refresh(wallet.address);
     }
 
+    // Stale-while-revalidate: a snapshot older than the freshness TTL is still returned right
+    // away, and a background refresh brings the ledger up to date for the next caller.
     public WalletSnapshot getOverview(String address) {
         WalletSnapshot cached = getCachedSnapshot(address);
-        if (cached != null) return cached;
-        return refresh(address);
+        if (cached == null) return refresh(address);
+        if (!isFresh(cached)) refreshInBackground(cached.address);
+        return cached;
+    }
+
+    public boolean isFresh(WalletSnapshot snapshot) {
+        long fetchedAtMs = snapshot == null ? 0L : WalletLedgerStore.epochFromIso(snapshot.fetchedAt) * 1000L;
+        return fetchedAtMs > 0L && System.currentTimeMillis() - fetchedAtMs <= overviewFreshMs;
+    }
+
+    public void setOverviewFreshMs(long freshMs) {
+        overviewFreshMs = Math.max(0L, freshMs);
+    }
+
+    // Called on a background thread after every successful refresh, forced or not.
+    public void setSnapshotListener(SnapshotListener listener) {
+        snapshotListener = listener;
+    }
+
+    // A request that arrives while a refresh is running queues one more pass after it.
+    private void refreshInBackground(String address) {
+        synchronized (BACKGROUND_REFRESHES) {
+            if (!BACKGROUND_REFRESHES.add(address)) {
+                BACKGROUND_RERUNS.add(address);
+                return;
+            }
+        }
+        RPC_EXECUTOR.execute(() -> {
+            boolean again = true;
+            try {
+                while (again) {
+                    refresh(address);
+                    synchronized (BACKGROUND_REFRESHES) {
+                        again = BACKGROUND_RERUNS.remove(address);
+                    }
+                }
+            } finally {
+                synchronized (BACKGROUND_REFRESHES) {
+                    BACKGROUND_REFRESHES.remove(address);
+                    BACKGROUND_RERUNS.remove(address);
+                }
+            }
+        });
+    }
+
+    public boolean isLiveUpdatesEnabled() {
+        return prefs.getBoolean(K_LIVE_UPDATES, false);
+    }
+
+    public void setLiveUpdatesEnabled(boolean enabled) {
+        prefs.edit().putBoolean(K_LIVE_UPDATES, enabled).apply();
+        if (enabled) startLiveUpdates();
+        else stopLiveUpdates();
+    }
+
+    // Opt-in push mode: one WebSocket keeps the stored wallet's balance current and pulls new
+    // transactions through the incremental sync as soon as the node reports them.
+    public void startLiveUpdates() {
+        StoredWallet wallet = getStoredWallet();
+        synchronized (this) {
+            if (!isLiveUpdatesEnabled() || wallet == null) {
+                stopLiveUpdatesLocked();
+                return;
+            }
+            if (accountWatcher != null && accountWatcher.getAddress().equals(wallet.address)) return;
+            stopLiveUpdatesLocked();
+            accountWatcher = new SolanaAccountWatcher(webSocketUrl(), wallet.address, new SolanaAccountWatcher.Listener() {
+                @Override
+                public void onBalance(String address, long lamports) {
+                    applyPushedBalance(address, lamports);
+                }
+
+                @Override
+                public void onTransaction(String address, String signature) {
+                    refreshInBackground(address);
+                }
+
+                @Override
+                public void onSubscribed(String address) {
+                    refreshInBackground(address);
+                }
+            });
+            accountWatcher.start();
+        }
+    }
+
+    public synchronized void stopLiveUpdates() {
+        stopLiveUpdatesLocked();
+    }
+
+    private void stopLiveUpdatesLocked() {
+        if (accountWatcher != null) accountWatcher.stop();
+        accountWatcher = null;
+    }
+
+    private void applyPushedBalance(String address, long lamports) {
+        boolean updated;
+        try {
+            migrateLegacySnapshot();
+            // Only the balance time moves; fetched_at stays the last full sync, so isFresh still
+            // sends the transaction list through a refresh when it is due.
+            updated = ledgerStore.updateBalance(address, lamports, isoNow());
+        } catch (Exception e) {
+            updated = false;
+        }
+        if (!updated) {
+            refreshInBackground(address);
+            return;
+        }
+        SnapshotListener listener = snapshotListener;
+        WalletSnapshot snapshot = listener == null ? null : getCachedSnapshot(address);
+        if (snapshot != null) listener.onSnapshotUpdated(snapshot);
+    }
+
+    private String webSocketUrl() {
+        String configured = clean(BuildConfig.SOLANA_WS_URL);
+        if (!configured.isEmpty()) return configured;
+        String rpcUrl = rpcHealth.order(RPC_OVERRIDES.length > 0 ? RPC_OVERRIDES : rpcCandidates(RPC_DEFAULT))[0];
+        if (rpcUrl.startsWith("https://")) return "wss://" + rpcUrl.substring("https://".length());
+        if (rpcUrl.startsWith("http://")) return "ws://" + rpcUrl.substring("http://".length());
+        return rpcUrl;
     }
 
     public WalletSnapshot refresh(String address) {
@@ -86,59 +256,206 @@ public class SolanaWalletClient {
         if (walletAddress.isEmpty()) {
             return WalletSnapshot.error(walletAddress, "Missing Solana wallet address");
         }
+        // Hedged: the healthiest node gets HEDGE_DELAY_MS to answer before the next one joins in,
+        // and a failed attempt hands over to the next node right away. First snapshot wins.
+        // Nodes with an open circuit breaker only get a turn once every other node has failed.
+        String[] candidates = rpcHealth.order(RPC_OVERRIDES.length > 0 ? RPC_OVERRIDES : rpcCandidates(RPC_DEFAULT));
+        WalletSnapshot cached = getCachedSnapshot(walletAddress);
+        JSONArray ledger = cached == null ? null : cached.recentTransactions;
+        LinkedBlockingQueue<RpcAttempt> finished = new LinkedBlockingQueue<>();
+        List<RpcAttempt> attempts = new ArrayList<>();
         Exception lastError = null;
-        for (String candidate : rpcCandidates(RPC_DEFAULT)) {
-            try {
-                JSONObject balanceResult = rpcRequest("getBalance", new JSONArray()
-                    .put(walletAddress)
-                    .put(new JSONObject().put("commitment", "confirmed")), candidate);
-                JSONArray signatureResults = rpcRequest("getSignaturesForAddress", new JSONArray()
-                    .put(walletAddress)
-                    .put(new JSONObject().put("limit", 5)), candidate).optJSONArray("value");
-
-                long lamports = 0L;
-                if (balanceResult != null) lamports = balanceResult.optLong("value", 0L);
-                JSONArray txs = new JSONArray();
-                if (signatureResults != null) {
-                    for (int i = 0; i < signatureResults.length() && i < 5; i++) {
-                        JSONObject item = signatureResults.optJSONObject(i);
-                        if (item == null) continue;
-                        String signature = clean(item.optString("signature", ""));
-                        if (signature.isEmpty()) continue;
-                        JSONObject summary = fetchTransactionSummary(walletAddress, signature, item, candidate);
-                        if (summary != null) txs.put(summary);
+        int completed = 0;
+        try {
+            attempts.add(startAttempt(walletAddress, ledger, candidates[0], finished));
+            while (completed < attempts.size()) {
+                RpcAttempt done = attempts.size() < candidates.length
+                    ? finished.poll(HEDGE_DELAY_MS, TimeUnit.MILLISECONDS)
+                    : finished.take();
+                if (done == null) {
+                    if (!rpcHealth.isOpen(candidates[attempts.size()])) {
+                        attempts.add(startAttempt(walletAddress, ledger, candidates[attempts.size()], finished));
                     }
+                    continue;
+                }
+                completed++;
+                if (done.snapshot != null) {
+                    cacheSnapshot(done.snapshot);
+                    SnapshotListener listener = snapshotListener;
+                    if (listener != null) listener.onSnapshotUpdated(done.snapshot);
+                    return done.snapshot;
+                }
+                lastError = done.error;
+                if (attempts.size() < candidates.length) {
+                    attempts.add(startAttempt(walletAddress, ledger, candidates[attempts.size()], finished));
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lastError = e;
+        } finally {
+            recordHealth(attempts, candidates);
+        }
+        return WalletSnapshot.error(walletAddress, lastError == null ? "Wallet refresh failed" : safeMessage(lastError));
+    }
 
-                WalletSnapshot snapshot = new WalletSnapshot(
-                    walletAddress,
-                    "solana",
-                    lamports,
-                    solFromLamports(lamports),
-                    isoNow(),
-                    candidate,
-                    txs,
-                    ""
-                );
-                cacheSnapshot(snapshot);
-                return snapshot;
+    private RpcAttempt startAttempt(String walletAddress, JSONArray ledger, String rpcUrl, LinkedBlockingQueue<RpcAttempt> finished) {
+        RpcAttempt attempt = new RpcAttempt(rpcUrl, SystemClock.elapsedRealtime());
+        RPC_EXECUTOR.execute(() -> {
+            try {
+                attempt.snapshot = fetchSnapshot(walletAddress, ledger, attempt);
             } catch (Exception e) {
-                lastError = e;
+                attempt.error = e;
+            }
+            attempt.finishedAt = SystemClock.elapsedRealtime();
+            finished.add(attempt);
+        });
+        return attempt;
+    }
+
+    private void recordHealth(List<RpcAttempt> attempts, String[] candidates) {
+        long now = SystemClock.elapsedRealtime();
+        for (RpcAttempt attempt : attempts) {
+            long finishedAt = attempt.finishedAt;
+            if (finishedAt == 0L) {
+                attempt.cancel();
+                rpcHealth.recordUnfinished(attempt.rpcUrl, now - attempt.startedAt);
+            } else if (attempt.snapshot != null) {
+                rpcHealth.recordSuccess(attempt.rpcUrl, finishedAt - attempt.startedAt);
+            } else {
+                rpcHealth.recordFailure(attempt.rpcUrl, finishedAt - attempt.startedAt);
             }
         }
-        return WalletSnapshot.error(walletAddress, lastError == null ? "Wallet refresh failed" : safeMessage(lastError));
+        rpcHealth.save(Arrays.asList(candidates));
     }
 
-    private JSONObject fetchTransactionSummary(String walletAddress, String signature, JSONObject fallback, String rpcUrl) {
-        try {
-            JSONObject tx = rpcRequest("getTransaction", new JSONArray()
-                .put(signature)
+    // Incremental: signatures are only listed back to the newest one already in the ledger,
+    // so a quiet wallet costs a single batch of getBalance + an empty signature list. A busy
+    // one is paged back with "before" until that signature is reached; only the newest
+    // RECENT_TRANSACTION_LIMIT get full getTransaction details, older ones are stored from
+    // their signature entry as partial rows.
+    private WalletSnapshot fetchSnapshot(String walletAddress, JSONArray ledger, RpcAttempt attempt) throws Exception {
+        JSONObject newestItem = ledger == null ? null : ledger.optJSONObject(0);
+        String newestKnown = newestItem == null ? "" : clean(newestItem.optString("signature", ""));
+        // A first sync only takes the latest page; there is nothing older to connect to.
+        int pageLimit = newestKnown.isEmpty() ? RECENT_TRANSACTION_LIMIT : SIGNATURE_PAGE_LIMIT;
+        JSONObject signatureOptions = new JSONObject().put("limit", pageLimit);
+        if (!newestKnown.isEmpty()) signatureOptions.put("until", newestKnown);
+        RpcBatch overview = new RpcBatch();
+        int balanceId = overview.add("getBalance", new JSONArray()
+            .put(walletAddress)
+            .put(new JSONObject().put("commitment", "confirmed")));
+        int signaturesId = overview.add("getSignaturesForAddress", new JSONArray()
+            .put(walletAddress)
+            .put(signatureOptions));
+        rpcBatchRequest(overview, attempt);
+        JSONObject balanceResult = overview.result(balanceId);
+        JSONArray page = overview.result(signaturesId).optJSONArray("value");
+
+        long lamports = 0L;
+        if (balanceResult != null) lamports = balanceResult.optLong("value", 0L);
+
+        // New signatures first, then the ledger; ledger entries whose getTransaction failed
+        // last time are fetched again alongside the new ones.
+        List<String> signatures = new ArrayList<>();
+        List<JSONObject> signatureItems = new ArrayList<>();
+        List<JSONObject> ledgerItems = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        addSignatureItems(page, signatures, signatureItems, ledgerItems, seen);
+        boolean reachedKnown = newestKnown.isEmpty() || page == null || page.length() < pageLimit;
+        for (int pages = 1; !reachedKnown && pages < MAX_SIGNATURE_PAGES && !signatures.isEmpty(); pages++) {
+            page = rpcRequest("getSignaturesForAddress", new JSONArray()
+                .put(walletAddress)
+                .put(new JSONObject()
+                    .put("limit", pageLimit)
+                    .put("until", newestKnown)
+                    .put("before", signatures.get(signatures.size() - 1))), attempt).optJSONArray("value");
+            addSignatureItems(page, signatures, signatureItems, ledgerItems, seen);
+            reachedKnown = page == null || page.length() < pageLimit;
+        }
+        int newCount = signatures.size();
+        if (ledger != null) {
+            for (int i = 0; i < ledger.length() && signatures.size() < RECENT_TRANSACTION_LIMIT; i++) {
+                JSONObject item = ledger.optJSONObject(i);
+                String signature = item == null ? "" : clean(item.optString("signature", ""));
+                if (signature.isEmpty() || !seen.add(signature)) continue;
+                signatures.add(signature);
+                signatureItems.add(null);
+                ledgerItems.add(item);
+            }
+        }
+        RpcBatch transactions = new RpcBatch();
+        List<Integer> transactionIds = new ArrayList<>();
+        for (int i = 0; i < signatures.size(); i++) {
+            JSONObject known = ledgerItems.get(i);
+            if (i >= RECENT_TRANSACTION_LIMIT || (known != null && !known.optBoolean("partial", false))) {
+                transactionIds.add(-1);
+                continue;
+            }
+            transactionIds.add(transactions.add("getTransaction", new JSONArray()
+                .put(signatures.get(i))
                 .put(new JSONObject()
                     .put("commitment", "confirmed")
                     .put("encoding", "jsonParsed")
-                    .put("maxSupportedTransactionVersion", 0)), rpcUrl);
-                if (tx != null) return normalizeTransactionSummary(walletAddress, tx, fallback);
-        } catch (Exception ignored) {
+                    .put("maxSupportedTransactionVersion", 0))));
+        }
+        if (transactions.size() > 0) {
+            try {
+                rpcTransactionBatch(transactions, new TransactionSummaryReader(walletAddress), attempt);
+            } catch (Exception ignored) {
+                // Keep the balance; each transaction falls back to its signature entry.
+            }
+        }
+        JSONArray txs = new JSONArray();
+        for (int i = 0; i < signatures.size(); i++) {
+            int id = transactionIds.get(i);
+            JSONObject tx = id < 0 ? null : transactions.resultOrNull(id);
+            JSONObject known = ledgerItems.get(i);
+            if (known != null && (tx == null || tx.length() == 0)) {
+                txs.put(known);
+            } else {
+                txs.put(transactionSummary(signatures.get(i), signatureItems.get(i), tx));
+            }
+        }
+        if (!reachedKnown && newCount > 0) {
+            // Still more between the oldest page and the ledger; the store keeps it as a gap so
+            // history totals do not claim to cover it.
+            JSONObject oldestNew = txs.optJSONObject(newCount - 1);
+            putJson(oldestNew, "gapOlderSlot", newestItem.optLong("slot", 0L));
+            putJson(oldestNew, "gapOlderBlockTime", newestItem.optString("blockTime", ""));
+        }
+
+        return new WalletSnapshot(
+            walletAddress,
+            "solana",
+            lamports,
+            solFromLamports(lamports),
+            isoNow(),
+            attempt.rpcUrl,
+            txs,
+            ""
+        );
+    }
+
+    private static void addSignatureItems(JSONArray page, List<String> signatures, List<JSONObject> signatureItems,
+                                          List<JSONObject> ledgerItems, Set<String> seen) {
+        if (page == null) return;
+        for (int i = 0; i < page.length(); i++) {
+            JSONObject item = page.optJSONObject(i);
+            String signature = item == null ? "" : clean(item.optString("signature", ""));
+            if (signature.isEmpty() || !seen.add(signature)) continue;
+            signatures.add(signature);
+            signatureItems.add(item);
+            ledgerItems.add(null);
+        }
+    }
+
+    // tx is already a compact summary from TransactionSummaryReader; the signature list only
+    // fills in a block time the node left out.
+    private JSONObject transactionSummary(String signature, JSONObject fallback, JSONObject tx) {
+        if (tx != null && tx.length() > 0) {
+            if (tx.optString("blockTime", "").isEmpty() && fallback != null) putJson(tx, "blockTime", fallbackBlockTime(fallback));
+            return tx;
         }
         JSONObject out = new JSONObject();
         putJson(out, "signature", signature);
@@ -150,80 +467,108 @@ public class SolanaWalletClient {
         putJson(out, "memo", fallback == null ? "" : clean(fallback.optString("memo", "")));
         putJson(out, "netLamports", 0L);
         putJson(out, "netSol", 0d);
+        putJson(out, "partial", true);
         return out;
     }
 
-    private JSONObject normalizeTransactionSummary(String walletAddress, JSONObject tx, JSONObject fallback) {
-        JSONObject meta = tx == null ? null : tx.optJSONObject("meta");
-        JSONObject transaction = tx == null ? null : tx.optJSONObject("transaction");
-        JSONObject message = transaction == null ? null : transaction.optJSONObject("message");
-        JSONArray accountKeys = message == null ? null : message.optJSONArray("accountKeys");
-        int walletIndex = findAccountIndex(walletAddress, accountKeys);
-        JSONArray preBalances = meta == null ? null : meta.optJSONArray("preBalances");
-        JSONArray postBalances = meta == null ? null : meta.optJSONArray("postBalances");
-        long pre = walletIndex >= 0 && preBalances != null ? preBalances.optLong(walletIndex, 0L) : 0L;
-        long post = walletIndex >= 0 && postBalances != null ? postBalances.optLong(walletIndex, 0L) : 0L;
-        long netLamports = post - pre;
-        JSONArray sigs = transaction == null ? null : transaction.optJSONArray("signatures");
-        String signature = sigs != null ? clean(sigs.optString(0, "")) : clean(tx == null ? "" : tx.optString("signature", ""));
-        Object err = meta == null ? null : meta.opt("err");
-        String confirmationStatus = clean(tx == null ? "" : tx.optString("confirmationStatus", ""));
-        if (confirmationStatus.isEmpty()) confirmationStatus = err == null || err == JSONObject.NULL ? "confirmed" : "failed";
-        long blockTime = tx == null ? 0L : tx.optLong("blockTime", 0L);
-        if (blockTime <= 0L && fallback != null) blockTime = fallback.optLong("blockTime", 0L);
-        JSONObject out = new JSONObject();
-        putJson(out, "signature", signature);
-        putJson(out, "slot", tx == null ? 0L : tx.optLong("slot", 0L));
-        putJson(out, "blockTime", blockTime > 0L ? isoFromEpoch(blockTime) : "");
-        putJson(out, "confirmationStatus", confirmationStatus);
-        putJson(out, "ok", err == null || err == JSONObject.NULL);
-        putJson(out, "err", err == null ? JSONObject.NULL : err);
-        putJson(out, "memo", clean(tx == null ? "" : tx.optString("memo", "")));
-        putJson(out, "netLamports", netLamports);
-        putJson(out, "netSol", solFromLamports(netLamports));
-        return out;
+    private JSONObject rpcRequest(String method, JSONArray params, RpcAttempt attempt) throws Exception {
+        String responseText = postRpc(rpcRequestBody(0, method, params).toString(), attempt);
+        JSONObject response = responseText.trim().isEmpty() ? new JSONObject() : new JSONObject(responseText);
+        return rpcResult(response);
+    }
+
+    // Sends every call in one JSON-RPC batch array and files the responses under their ids.
+    // Nodes that refuse batches answer with a single error object; the calls then go one by one.
+    private void rpcBatchRequest(RpcBatch batch, RpcAttempt attempt) throws Exception {
+        batch.reset();
+        if (batch.size() == 0) return;
+        String responseText = postRpc(batch.requests.toString(), attempt).trim();
+        if (!responseText.startsWith("[")) {
+            for (int id = 0; id < batch.size(); id++) {
+                JSONObject request = batch.requests.getJSONObject(id);
+                try {
+                    batch.results[id] = rpcRequest(request.getString("method"), request.optJSONArray("params"), attempt);
+                } catch (Exception e) {
+                    batch.errors[id] = e;
+                }
+            }
+            return;
+        }
+        JSONArray responses = new JSONArray(responseText);
+        for (int i = 0; i < responses.length(); i++) {
+            JSONObject response = responses.optJSONObject(i);
+            if (response == null) continue;
+            int id = response.optInt("id", -1);
+            if (id < 0 || id >= batch.size()) continue;
+            try {
+                batch.results[id] = rpcResult(response);
+            } catch (Exception e) {
+                batch.errors[id] = e;
+            }
+        }
     }
 
-    private int findAccountIndex(String address, JSONArray accountKeys) {
-        if (accountKeys == null) return -1;
-        String needle = clean(address);
-        if (needle.isEmpty()) return -1;
-        for (int i = 0; i < accountKeys.length(); i++) {
-            Object item = accountKeys.opt(i);
-            String key = "";
-            if (item instanceof JSONObject) {
-                key = clean(((JSONObject) item).optString("pubkey", ""));
-            } else if (item != null) {
-                key = clean(String.valueOf(item));
+    // getTransaction responses are read straight off the socket into compact summaries, so
+    // instruction and log arrays are skipped instead of being built as org.json trees.
+    private void rpcTransactionBatch(RpcBatch batch, TransactionSummaryReader reader, RpcAttempt attempt) throws Exception {
+        batch.reset();
+        if (batch.size() == 0) return;
+        boolean batched = postRpc(batch.requests.toString(), attempt,
+            in -> reader.readResponses(in, batch.results, batch.errors));
+        if (batched) return;
+        for (int id = 0; id < batch.size(); id++) {
+            try {
+                postRpc(batch.requests.getJSONObject(id).toString(), attempt,
+                    in -> reader.readResponses(in, batch.results, batch.errors));
+            } catch (Exception e) {
+                batch.errors[id] = e;
             }
-            if (needle.equals(key)) return i;
         }
-        return -1;
     }
 
-    private JSONObject rpcRequest(String method, JSONArray params, String rpcUrl) throws Exception {
-        HttpURLConnection conn = (HttpURLConnection) new URL(rpcUrl).openConnection();
-        conn.setRequestMethod("POST");
-        conn.setConnectTimeout(15000);
-        conn.setReadTimeout(30000);
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-        JSONObject body = new JSONObject()
+    private String postRpc(String body, RpcAttempt attempt) throws Exception {
+        String[] responseText = new String[1];
+        postRpc(body, attempt, in -> {
+            responseText[0] = HttpTransport.readAll(in);
+            return true;
+        });
+        return responseText[0];
+    }
+
+    // The connection stays tracked while the reader runs, so cancel() also stops a slow body.
+    private boolean postRpc(String body, RpcAttempt attempt, ResponseReader reader) throws Exception {
+        HttpURLConnection conn = HttpTransport.openJson("POST", attempt.rpcUrl, 15000, 30000);
+        attempt.track(conn);
+        try {
+            HttpTransport.writeBody(conn, body);
+            int code = conn.getResponseCode();
+            if (!HttpTransport.isSuccess(code)) {
+                HttpTransport.readBody(conn, code);
+                throw new IllegalStateException("Solana RPC failed (" + code + ")");
+            }
+            try (InputStream in = conn.getInputStream()) {
+                boolean ok = reader.read(in);
+                HttpTransport.drain(in);
+                return ok;
+            }
+        } finally {
+            attempt.track(null);
+        }
+    }
+
+    private interface ResponseReader {
+        boolean read(InputStream in) throws Exception;
+    }
+
+    private static JSONObject rpcRequestBody(int id, String method, JSONArray params) throws Exception {
+        return new JSONObject()
             .put("jsonrpc", "2.0")
-            .put("id", String.valueOf(System.currentTimeMillis()))
+            .put("id", id)
             .put("method", method)
             .put("params", params == null ? new JSONArray() : params);
-        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
-        conn.setFixedLengthStreamingMode(bytes.length);
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(bytes);
-        }
-        int code = conn.getResponseCode();
-        String responseText = readAll(code >= 200 && code < 300 ? conn.getInputStream() : conn.getErrorStream());
-        JSONObject response = responseText.isEmpty() ? new JSONObject() : new JSONObject(responseText);
-        if (code < 200 || code >= 300) {
-            throw new IllegalStateException("Solana RPC failed (" + code + ")");
-        }
+    }
+
+    private static JSONObject rpcResult(JSONObject response) throws Exception {
         if (!response.isNull("error")) {
             JSONObject error = response.optJSONObject("error");
             String message = error == null ? String.valueOf(response.opt("error")) : error.optString("message", "");
@@ -235,13 +580,84 @@ public class SolanaWalletClient {
         return new JSONObject();
     }
 
+    // One endpoint's try at a refresh. cancel() drops the socket of whatever call is in flight.
+    private static final class RpcAttempt {
+        final String rpcUrl;
+        final long startedAt;
+        volatile WalletSnapshot snapshot;
+        volatile Exception error;
+        volatile long finishedAt;
+        private HttpURLConnection connection;
+        private boolean cancelled;
+
+        RpcAttempt(String rpcUrl, long startedAt) {
+            this.rpcUrl = rpcUrl;
+            this.startedAt = startedAt;
+        }
+
+        synchronized void track(HttpURLConnection conn) {
+            if (cancelled && conn != null) {
+                conn.disconnect();
+                throw new IllegalStateException("Solana RPC request cancelled");
+            }
+            connection = conn;
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (connection != null) connection.disconnect();
+            connection = null;
+        }
+    }
+
+    private static final class RpcBatch {
+        final JSONArray requests = new JSONArray();
+        JSONObject[] results;
+        Exception[] errors;
+
+        int add(String method, JSONArray params) throws Exception {
+            int id = requests.length();
+            requests.put(rpcRequestBody(id, method, params));
+            return id;
+        }
+
+        int size() {
+            return requests.length();
+        }
+
+        void reset() {
+            results = new JSONObject[size()];
+            errors = new Exception[size()];
+        }
+
+        JSONObject result(int id) {
+            if (results != null && results[id] != null) return results[id];
+            Exception error = errors == null ? null : errors[id];
+            if (error instanceof IllegalStateException) throw (IllegalStateException) error;
+            if (error != null) throw new IllegalStateException(safeMessage(error));
+            throw new IllegalStateException("Solana RPC returned no response for request " + id);
+        }
+
+        JSONObject resultOrNull(int id) {
+            return results == null ? null : results[id];
+        }
+    }
+
+    // Local history for the assistant; only covers what refreshes have synced to this device.
+    public JSONArray getLedgerPage(String address, long beforeSlot, int limit) {
+        migrateLegacySnapshot();
+        return ledgerStore.page(clean(address), beforeSlot, limit);
+    }
+
+    public WalletLedgerStore.Totals getLedgerTotalsSince(String address, long sinceEpochSeconds) {
+        migrateLegacySnapshot();
+        return ledgerStore.totalsSince(clean(address), sinceEpochSeconds);
+    }
+
     private WalletSnapshot getCachedSnapshot(String address) {
-        String raw = prefs.getString(K_LAST_SNAPSHOT, "");
-        if (raw == null || raw.trim().isEmpty()) return null;
+        migrateLegacySnapshot();
         try {
-            WalletSnapshot snapshot = WalletSnapshot.fromJson(new JSONObject(raw));
-            if (!clean(address).equals(snapshot.address)) return null;
-            return snapshot;
+            return ledgerStore.loadSnapshot(clean(address), RECENT_TRANSACTION_LIMIT);
         } catch (Exception ignored) {
             return null;
         }
@@ -249,7 +665,22 @@ public class SolanaWalletClient {
 
     private void cacheSnapshot(WalletSnapshot snapshot) {
         if (snapshot == null || snapshot.address.isEmpty()) return;
-        prefs.edit().putString(K_LAST_SNAPSHOT, snapshot.toJson().toString()).apply();
+        migrateLegacySnapshot();
+        try {
+            ledgerStore.saveSnapshot(snapshot);
+        } catch (Exception ignored) {
+        }
+    }
+
+    // Older builds kept a single snapshot JSON string in prefs; move it into the ledger once.
+    private void migrateLegacySnapshot() {
+        String raw = prefs.getString(K_LAST_SNAPSHOT, "");
+        if (raw == null || raw.trim().isEmpty()) return;
+        try {
+            ledgerStore.saveSnapshot(WalletSnapshot.fromJson(new JSONObject(raw)));
+        } catch (Exception ignored) {
+        }
+        prefs.edit().remove(K_LAST_SNAPSHOT).apply();
     }
 
     private String[] rpcCandidates(String preferred) {
@@ -273,6 +704,14 @@ public class SolanaWalletClient {
         return out;
     }
 
+    private static String[] splitUrls(String value) {
+        List<String> urls = new ArrayList<>();
+        for (String url : clean(value).split(",")) {
+            if (!clean(url).isEmpty()) urls.add(clean(url));
+        }
+        return urls.toArray(new String[0]);
+    }
+
     private static String clean(String value) {
         return value == null ? "" : value.trim();
     }
@@ -304,16 +743,6 @@ public class SolanaWalletClient {
         return blockTime > 0L ? isoFromEpoch(blockTime) : "";
     }
 
-    private static String readAll(InputStream stream) throws Exception {
-        if (stream == null) return "";
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = br.readLine()) != null) sb.append(line);
-        }
-        return sb.toString();
-    }
-
     private static String safeMessage(Exception e) {
         if (e == null || e.getMessage() == null || e.getMessage().trim().isEmpty()) return "unknown error";
         return e.getMessage().trim();
@@ -325,16 +754,24 @@ public class SolanaWalletClient {
         public final long lamports;
         public final double balanceSol;
         public final String fetchedAt;
+        // Later than fetchedAt when a pushed balance arrived after the last full sync.
+        public final String balanceAt;
         public final String rpcSource;
         public final JSONArray recentTransactions;
         public final String lastError;
 
         WalletSnapshot(String address, String chain, long lamports, double balanceSol, String fetchedAt, String rpcSource, JSONArray recentTransactions, String lastError) {
+            this(address, chain, lamports, balanceSol, fetchedAt, fetchedAt, rpcSource, recentTransactions, lastError);
+        }
+
+        WalletSnapshot(String address, String chain, long lamports, double balanceSol, String fetchedAt, String balanceAt,
+                       String rpcSource, JSONArray recentTransactions, String lastError) {
             this.address = clean(address);
             this.chain = clean(chain);
             this.lamports = lamports;
             this.balanceSol = balanceSol;
             this.fetchedAt = clean(fetchedAt);
+            this.balanceAt = clean(balanceAt).isEmpty() ? this.fetchedAt : clean(balanceAt);
             this.rpcSource = clean(rpcSource);
             this.recentTransactions = recentTransactions == null ? new JSONArray() : recentTransactions;
             this.lastError = clean(lastError);
@@ -344,19 +781,6 @@ public class SolanaWalletClient {
             return new WalletSnapshot(address, clean(address).isEmpty() ? "" : "solana", 0L, 0d, "", "", new JSONArray(), clean(lastError));
         }
 
-        JSONObject toJson() {
-            JSONObject out = new JSONObject();
-            putJson(out, "address", address);
-            putJson(out, "chain", chain);
-            putJson(out, "lamports", lamports);
-            putJson(out, "balanceSol", balanceSol);
-            putJson(out, "fetchedAt", fetchedAt);
-            putJson(out, "rpcSource", rpcSource);
-            putJson(out, "recentTransactions", recentTransactions);
-            putJson(out, "lastError", lastError);
-            return out;
-        }
-
         static WalletSnapshot fromJson(JSONObject json) {
             if (json == null) return null;
             return new WalletSnapshot(
@@ -0,0 +1,45 @@
+package ai.agent1c.hitomi;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+public final class SseEventReader implements Closeable {
+    private final BufferedReader reader;
+
+    public SseEventReader(InputStream stream) {
+        this.reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    // Returns the joined data lines of the next event, or null at end of stream.
+    public String nextData() throws IOException {
+        StringBuilder data = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (data != null) return data.toString();
+                continue;
+            }
+            if (line.charAt(0) == ':') continue;
+            int colon = line.indexOf(':');
+            String field = colon < 0 ? line : line.substring(0, colon);
+            if (!"data".equals(field)) continue;
+            String value = colon < 0 ? "" : line.substring(colon + 1);
+            if (value.startsWith(" ")) value = value.substring(1);
+            if (data == null) {
+                data = new StringBuilder(value);
+            } else {
+                data.append('\n').append(value);
+            }
+        }
+        return data == null ? null : data.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,121 @@
+package ai.agent1c.hitomi;
+
+// Fixed-capacity character ring for the Terminal window. append() costs O(text) no matter how
+// full the buffer is; once it overflows, the head is cut back to the next line start (a single
+// line longer than the whole buffer is cut mid-line). append() reports how many characters
+// left the head, so an Editable mirroring the buffer can delete exactly that range.
+public final class TerminalTranscriptBuffer implements CharSequence {
+    private final char[] ring;
+    private int start = 0;
+    private int length = 0;
+    // Total characters ever appended; the absolute offset of the buffer's end.
+    private long appended = 0L;
+    // Absolute offsets of line starts still inside the buffer, oldest first, in a ring.
+    private long[] lineStarts = new long[64];
+    private int lineHead = 0;
+    private int lineCount = 0;
+
+    public TerminalTranscriptBuffer(int capacity) {
+        ring = new char[Math.max(1, capacity)];
+    }
+
+    // Returns how many characters were dropped from the head, counting from the content
+    // before this call followed by all of text.
+    public int append(CharSequence text) {
+        int n = text == null ? 0 : text.length();
+        if (n == 0) return 0;
+        int before = length;
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (length < ring.length) {
+                ring[(start + length) % ring.length] = c;
+                length++;
+            } else {
+                ring[start] = c;
+                start = (start + 1) % ring.length;
+            }
+            appended++;
+            if (c == '\n') pushLineStart(appended);
+        }
+        long head = appended - length;
+        if (before + n > length) {
+            // Something fell off: finish the cut at the next whole line, if there is one.
+            dropLineStartsBefore(head);
+            if (lineCount > 0) {
+                long next = lineStarts[lineHead];
+                if (next > head && next < appended) {
+                    int skip = (int) (next - head);
+                    start = (start + skip) % ring.length;
+                    length -= skip;
+                }
+            }
+        }
+        dropLineStartsBefore(appended - length + 1);
+        return before + n - length;
+    }
+
+    // Number of '\n' at the end, counting at most max of them.
+    public int trailingNewlines(int max) {
+        int count = 0;
+        while (count < max && count < length && charAt(length - 1 - count) == '\n') count++;
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public void clear() {
+        start = 0;
+        length = 0;
+        lineHead = 0;
+        lineCount = 0;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        return ring[(start + index) % ring.length];
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length || from > to) throw new IndexOutOfBoundsException(from + ".." + to + ", length " + length);
+        StringBuilder sb = new StringBuilder(to - from);
+        int first = (start + from) % ring.length;
+        int count = to - from;
+        int run = Math.min(count, ring.length - first);
+        sb.append(ring, first, run);
+        if (run < count) sb.append(ring, 0, count - run);
+        return sb;
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    private void pushLineStart(long offset) {
+        if (lineCount == lineStarts.length) {
+            long[] grown = new long[lineStarts.length * 2];
+            for (int i = 0; i < lineCount; i++) grown[i] = lineStarts[(lineHead + i) % lineStarts.length];
+            lineStarts = grown;
+            lineHead = 0;
+        }
+        lineStarts[(lineHead + lineCount) % lineStarts.length] = offset;
+        lineCount++;
+    }
+
+    // Line starts at or before the head are implied by the head itself.
+    private void dropLineStartsBefore(long offset) {
+        while (lineCount > 0 && lineStarts[lineHead] < offset) {
+            lineHead = (lineHead + 1) % lineStarts.length;
+            lineCount--;
+        }
+    }
+}
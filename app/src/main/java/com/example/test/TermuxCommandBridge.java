@@ -13,12 +13,16 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+// runCommand() may be called from any thread; results and timeouts arrive on the main thread.
+// At most maxInFlight commands are handed to Termux at once, the rest wait in a bounded queue.
 public class TermuxCommandBridge {
     public static final String TERMUX_PACKAGE = "com.termux";
     private static final String TERMUX_RUN_SERVICE = "com.termux.app.RunCommandService";
@@ -38,17 +42,43 @@ public class TermuxCommandBridge {
     private static final String RESULT_EXIT_CODE = "exitCode";
     private static final String RESULT_ERRMSG = "errmsg";
     private static final String RESULT_ERR = "err";
+    private static final long RESULT_TIMEOUT_MS = 15000L;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 2;
+    private static final int MAX_QUEUED = 16;
 
     private final Context appContext;
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private final AtomicInteger nextReqId = new AtomicInteger(1000);
     private final String callbackAction;
-    private final Map<Integer, Callback> callbacks = new HashMap<>();
-    private final Map<Integer, Runnable> timeouts = new HashMap<>();
+    private final Object lock = new Object();
+    // Every accepted command until its result, timeout or cancel; guarded by lock.
+    private final Map<Integer, Request> requests = new HashMap<>();
+    private final ArrayDeque<Request> queue = new ArrayDeque<>();
+    private int inFlight = 0;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
     private boolean receiverRegistered = false;
 
     public interface Callback {
         void onResult(Result result);
+
+        // position is 1 for the next command to start; called again as the queue moves.
+        default void onQueued(int position) {
+        }
+    }
+
+    private static final class Request {
+        final int reqId;
+        final Intent intent;
+        final Callback callback;
+        volatile Runnable timeout;
+        int queuedBehind = 0;
+        boolean dispatched = false;
+
+        Request(int reqId, Intent intent, Callback callback) {
+            this.reqId = reqId;
+            this.intent = intent;
+            this.callback = callback;
+        }
     }
 
     public static final class Result {
@@ -57,6 +87,10 @@ public class TermuxCommandBridge {
         public String stderr = "";
         public String errorMessage = "";
         public boolean timedOut = false;
+        // How many commands were ahead of this one when it was queued; 0 if it started at once.
+        public int queuedBehind = 0;
+        // Set by TermuxSession: the shell's cwd after the command, which later commands inherit.
+        public String workingDirectory = "";
     }
 
     public TermuxCommandBridge(Context context) {
@@ -94,22 +128,29 @@ public class TermuxCommandBridge {
         );
     }
 
-    public void runCommand(String path, String[] args, String workDir, Callback callback) {
-        if (callback == null) return;
+    public void setMaxInFlight(int limit) {
+        synchronized (lock) {
+            maxInFlight = Math.max(1, limit);
+        }
+        dispatchQueued();
+    }
+
+    // Returns the request id for cancel(), or -1 when the command was answered right away.
+    public int runCommand(String path, String[] args, String workDir, Callback callback) {
+        if (callback == null) return -1;
         if (!isTermuxInstalled()) {
             Result r = new Result();
             r.errorMessage = "Termux not installed";
             callback.onResult(r);
-            return;
+            return -1;
         }
         if (!isRunCommandServiceAvailable()) {
             Result r = new Result();
             r.errorMessage = "RunCommandService unavailable";
             callback.onResult(r);
-            return;
+            return -1;
         }
         final int reqId = nextReqId.incrementAndGet();
-        callbacks.put(reqId, callback);
 
         Intent callbackIntent = new Intent(callbackAction);
         callbackIntent.setPackage(appContext.getPackageName());
@@ -120,6 +161,44 @@ public class TermuxCommandBridge {
         }
         PendingIntent pendingIntent = PendingIntent.getBroadcast(appContext, reqId, callbackIntent, piFlags);
 
+        Intent intent = buildRunIntent(path, args, workDir);
+        intent.putExtra(EXTRA_PENDING_INTENT, pendingIntent);
+
+        Request request = new Request(reqId, intent, callback);
+        int position;
+        synchronized (lock) {
+            if (queue.size() >= MAX_QUEUED) {
+                position = -1;
+            } else {
+                requests.put(reqId, request);
+                queue.addLast(request);
+                position = Math.max(0, inFlight + queue.size() - maxInFlight);
+                request.queuedBehind = position > 0 ? inFlight + queue.size() - 1 : 0;
+            }
+        }
+        if (position < 0) {
+            Result r = new Result();
+            r.errorMessage = "Too many Termux commands are waiting; try again when they finish";
+            callback.onResult(r);
+            return -1;
+        }
+        if (position > 0) callback.onQueued(position);
+        dispatchQueued();
+        return reqId;
+    }
+
+    // Starts a long-running background command without waiting for (or queueing behind) results.
+    public boolean launchDetached(String path, String[] args, String workDir) {
+        if (!isTermuxInstalled() || !isRunCommandServiceAvailable()) return false;
+        try {
+            appContext.startService(buildRunIntent(path, args, workDir));
+            return true;
+        } catch (Exception ignored) {
+            return false;
+        }
+    }
+
+    private Intent buildRunIntent(String path, String[] args, String workDir) {
         Intent intent = new Intent(ACTION_TERMUX_RUN);
         intent.setComponent(new ComponentName(TERMUX_PACKAGE, TERMUX_RUN_SERVICE));
         intent.putExtra(EXTRA_PATH, path);
@@ -128,36 +207,77 @@ public class TermuxCommandBridge {
         intent.putExtra(EXTRA_SESSION_ACTION, "0");
         intent.putExtra(EXTRA_STDIN, "");
         if (workDir != null && !workDir.trim().isEmpty()) intent.putExtra(EXTRA_WORKDIR, workDir);
-        intent.putExtra(EXTRA_PENDING_INTENT, pendingIntent);
+        return intent;
+    }
+
+    // Drops a queued command, or stops waiting for one Termux is already running.
+    // The callback is not called.
+    public void cancel(int reqId) {
+        Request request;
+        synchronized (lock) {
+            request = requests.remove(reqId);
+            if (request == null) return;
+            if (request.dispatched) {
+                inFlight--;
+            } else {
+                queue.remove(request);
+            }
+        }
+        if (request.timeout != null) mainHandler.removeCallbacks(request.timeout);
+        dispatchQueued();
+    }
 
+    private void dispatchQueued() {
+        while (true) {
+            Request next;
+            List<Request> waiting;
+            synchronized (lock) {
+                if (inFlight >= maxInFlight || queue.isEmpty()) return;
+                next = queue.pollFirst();
+                next.dispatched = true;
+                inFlight++;
+                waiting = new ArrayList<>(queue);
+            }
+            for (int i = 0; i < waiting.size(); i++) waiting.get(i).callback.onQueued(i + 1);
+            dispatch(next);
+        }
+    }
+
+    private void dispatch(Request request) {
         Runnable timeout = () -> {
-            Callback cb = callbacks.remove(reqId);
-            timeouts.remove(reqId);
-            if (cb == null) return;
+            if (!finish(request.reqId)) return;
             Result r = new Result();
             r.timedOut = true;
             r.errorMessage = "Timed out waiting for Termux result";
-            cb.onResult(r);
+            r.queuedBehind = request.queuedBehind;
+            request.callback.onResult(r);
         };
-        timeouts.put(reqId, timeout);
-        mainHandler.postDelayed(timeout, 15000L);
+        request.timeout = timeout;
+        mainHandler.postDelayed(timeout, RESULT_TIMEOUT_MS);
 
         try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                appContext.startService(intent);
-            } else {
-                appContext.startService(intent);
-            }
+            appContext.startService(request.intent);
         } catch (Exception e) {
             mainHandler.removeCallbacks(timeout);
-            timeouts.remove(reqId);
-            callbacks.remove(reqId);
+            if (!finish(request.reqId)) return;
             Result r = new Result();
             r.errorMessage = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
-            callback.onResult(r);
+            request.callback.onResult(r);
         }
     }
 
+    // Claims a dispatched request for its one and only result; false if it was already
+    // answered, timed out or cancelled.
+    private boolean finish(int reqId) {
+        synchronized (lock) {
+            Request request = requests.remove(reqId);
+            if (request == null) return false;
+            if (request.dispatched) inFlight--;
+        }
+        dispatchQueued();
+        return true;
+    }
+
     public void shutdown() {
         if (!receiverRegistered) return;
         try {
@@ -165,11 +285,19 @@ public class TermuxCommandBridge {
         } catch (Exception ignored) {
         }
         receiverRegistered = false;
-        for (Runnable r : new ArrayList<>(timeouts.values())) {
+        List<Runnable> pendingTimeouts = new ArrayList<>();
+        synchronized (lock) {
+            for (Iterator<Request> it = requests.values().iterator(); it.hasNext(); ) {
+                Request request = it.next();
+                if (request.timeout != null) pendingTimeouts.add(request.timeout);
+                it.remove();
+            }
+            queue.clear();
+            inFlight = 0;
+        }
+        for (Runnable r : pendingTimeouts) {
             mainHandler.removeCallbacks(r);
         }
-        timeouts.clear();
-        callbacks.clear();
     }
 
     private void registerReceiver() {
@@ -190,12 +318,16 @@ public class TermuxCommandBridge {
             int reqId = intent.getIntExtra(EXTRA_REQ_ID, -1);
             if (reqId < 0) return;
 
-            Runnable timeout = timeouts.remove(reqId);
-            if (timeout != null) mainHandler.removeCallbacks(timeout);
-            Callback cb = callbacks.remove(reqId);
-            if (cb == null) return;
+            Request request;
+            synchronized (lock) {
+                request = requests.get(reqId);
+            }
+            if (request == null || !request.dispatched) return;
+            if (request.timeout != null) mainHandler.removeCallbacks(request.timeout);
+            if (!finish(reqId)) return;
 
             Result result = new Result();
+            result.queuedBehind = request.queuedBehind;
             Bundle pluginBundle = intent.getBundleExtra(RESULT_BUNDLE_KEY);
             Bundle src = pluginBundle != null ? pluginBundle : intent.getExtras();
             if (src != null) {
@@ -210,7 +342,7 @@ public class TermuxCommandBridge {
                     }
                 }
             }
-            cb.onResult(result);
+            request.callback.onResult(result);
         }
     };
 
@@ -0,0 +1,337 @@
+package ai.agent1c.hitomi;
+
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// One long-lived bash inside Termux that keeps its cwd and environment between commands.
+// Apps cannot share a FIFO across UIDs, so the helper dials back into a loopback socket owned
+// by this app (bash /dev/tcp) and proves itself with a per-launch token.
+//
+// Protocol, all lines:
+//   app -> helper  "C <id> <base64 command>"
+//   helper -> app  "O <id> <base64 chunk>" / "E <id> <base64 chunk>" as stdout / stderr arrive,
+//                  "X <id> O" and "X <id> E" when each stream closes,
+//                  "R <id> <exit code> <cwd>" when the command returns.
+// A command is done once R and both X lines are in; they may arrive in any order.
+public final class TermuxSession {
+    private static final String TAG = "HitomiTermuxSession";
+    private static final String BASH_PATH = "/data/data/com.termux/files/usr/bin/bash";
+    private static final int ACCEPT_TIMEOUT_MS = 6000;
+    private static final long RETRY_AFTER_FAILURE_MS = 60_000L;
+    private static final int MAX_KEPT_CHARS = 64 * 1024;
+    private static final int MAX_LINE_BYTES = 16 * 1024;
+    // Blocking socket calls ignore interrupts, so reads and accepts wake up this often to see
+    // whether the caller was cancelled.
+    private static final int POLL_MS = 250;
+
+    // Every helper name is prefixed so user commands, which run in this same shell, are
+    // unlikely to clobber them. The command keeps running in the helper shell itself (so cd
+    // and export stick); its stdout and stderr go to process substitutions that forward each
+    // read as it happens. dd without fullblock returns whatever the pipe has, and 1536 bytes
+    // encode to a 2 KB line, small enough that the two forwarders' writes do not interleave.
+    // fd 3 is closed for the command so its output cannot leak into the protocol.
+    private static final String HELPER_SCRIPT =
+        "exec 3<>\"/dev/tcp/127.0.0.1/$1\" || exit 1\n"
+            + "printf 'HELLO %s\\n' \"$2\" >&3\n"
+            + "__hitomi_forward() {\n"
+            + "  while __hitomi_chunk=$(dd bs=1536 count=1 2>/dev/null | base64 -w0) && [ -n \"$__hitomi_chunk\" ]; do\n"
+            + "    printf '%s %s %s\\n' \"$1\" \"$__hitomi_id\" \"$__hitomi_chunk\" >&3 || return\n"
+            + "  done\n"
+            + "  printf 'X %s %s\\n' \"$__hitomi_id\" \"$1\" >&3\n"
+            + "}\n"
+            + "cd \"$HOME\" 2>/dev/null\n"
+            + "while IFS=' ' read -r __hitomi_op __hitomi_id __hitomi_b64 <&3; do\n"
+            + "  [ \"$__hitomi_op\" = C ] || continue\n"
+            + "  __hitomi_cmd=$(printf '%s' \"$__hitomi_b64\" | base64 -d) || __hitomi_cmd=false\n"
+            + "  { eval \"$__hitomi_cmd\"; } > >(__hitomi_forward O) 2> >(__hitomi_forward E) </dev/null 3>&-\n"
+            + "  printf 'R %s %s %s\\n' \"$__hitomi_id\" \"$?\" \"$PWD\" >&3 || exit 0\n"
+            + "done\n";
+
+    private final TermuxCommandBridge bridge;
+    // Fair, so calls from one reply reach the shell in the order they started waiting.
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final SecureRandom random = new SecureRandom();
+    // Volatile so close() can shut them from another thread without waiting for the lock.
+    private volatile ServerSocket server;
+    private volatile Socket socket;
+    private volatile boolean closed = false;
+    private InputStream in;
+    private OutputStream out;
+    // Bytes of a frame cut off by a poll timeout, kept for the next read.
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream(64);
+    private int nextId = 1;
+    private long retryAt = 0L;
+
+    public interface OutputListener {
+        // Decoded text as the command produced it; called on the caller's thread.
+        void onOutput(String text, boolean stderr);
+
+        // The shell runs one command at a time; position counts the commands ahead of this one.
+        default void onQueued(int position) {
+        }
+    }
+
+    public TermuxSession(TermuxCommandBridge bridge) {
+        this.bridge = bridge;
+    }
+
+    // Runs one command in the shared shell. Returns null when the session could not be
+    // started, so the command was never sent and the caller may fall back to a one-shot run.
+    // Commands are serialized here rather than by the bridge's in-flight limit; the result's
+    // queuedBehind says how many were ahead, as it does for one-shot runs. An interrupted
+    // caller stops waiting right away and the session is dropped, as after a timeout.
+    public TermuxCommandBridge.Result exec(String command, long timeoutMs, OutputListener listener) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        int ahead = lock.getQueueLength() + (lock.isLocked() ? 1 : 0);
+        if (ahead > 0 && listener != null) listener.onQueued(ahead);
+        if (!lock.tryLock(timeoutMs, TimeUnit.MILLISECONDS)) {
+            TermuxCommandBridge.Result r = new TermuxCommandBridge.Result();
+            r.timedOut = true;
+            r.errorMessage = "Timed out waiting for the Termux session";
+            r.queuedBehind = ahead;
+            return r;
+        }
+        try {
+            TermuxCommandBridge.Result r = execLocked(command, deadline, listener);
+            if (r != null) r.queuedBehind = ahead;
+            return r;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TermuxCommandBridge.Result execLocked(String command, long deadline, OutputListener listener) throws InterruptedException {
+        if (!ensureConnected()) return null;
+        int id = nextId++;
+        Utf8Stream stdout = new Utf8Stream();
+        Utf8Stream stderr = new Utf8Stream();
+        String encoded = Base64.encodeToString(command.getBytes(StandardCharsets.UTF_8), Base64.NO_WRAP);
+        try {
+            out.write(("C " + id + " " + encoded + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            return readResult(id, deadline, listener, stdout, stderr);
+        } catch (InterruptedException e) {
+            disconnect();
+            throw e;
+        } catch (SocketTimeoutException e) {
+            // The command is still running in the shell; drop the session rather than
+            // reading its late output as the answer to the next command.
+            disconnect();
+            TermuxCommandBridge.Result r = new TermuxCommandBridge.Result();
+            r.timedOut = true;
+            r.errorMessage = "Timed out waiting for Termux result";
+            r.stdout = stdout.kept.toString();
+            r.stderr = stderr.kept.toString();
+            return r;
+        } catch (IOException e) {
+            disconnect();
+            TermuxCommandBridge.Result r = new TermuxCommandBridge.Result();
+            r.errorMessage = "Termux session closed: " + (e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+            return r;
+        }
+    }
+
+    // Called from onDestroy on the main thread, so it does not wait behind a running or queued
+    // command; closing the sockets fails that command's blocked read or accept right away.
+    public void close() {
+        closed = true;
+        closeQuietly(socket);
+        closeQuietly(server);
+    }
+
+    private TermuxCommandBridge.Result readResult(int id, long deadline, OutputListener listener,
+                                                  Utf8Stream stdout, Utf8Stream stderr) throws IOException, InterruptedException {
+        boolean stdoutClosed = false;
+        boolean stderrClosed = false;
+        String[] returned = null;
+        String expectedId = String.valueOf(id);
+        while (returned == null || !stdoutClosed || !stderrClosed) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            String line;
+            try {
+                setReadTimeout(deadline);
+                line = readLine();
+            } catch (SocketTimeoutException e) {
+                if (System.currentTimeMillis() >= deadline) throw e;
+                continue;
+            }
+            String[] frame = line.split(" ", 4);
+            if (frame.length < 3) throw new IOException("Bad Termux session frame");
+            if (!expectedId.equals(frame[1])) continue;
+            switch (frame[0]) {
+                case "O":
+                case "E": {
+                    boolean isStderr = "E".equals(frame[0]);
+                    String text = (isStderr ? stderr : stdout).decode(Base64.decode(frame[2], Base64.DEFAULT));
+                    if (!text.isEmpty() && listener != null) listener.onOutput(text, isStderr);
+                    break;
+                }
+                case "X":
+                    if ("O".equals(frame[2])) stdoutClosed = true;
+                    if ("E".equals(frame[2])) stderrClosed = true;
+                    break;
+                case "R":
+                    returned = frame;
+                    break;
+                default:
+                    throw new IOException("Bad Termux session frame");
+            }
+        }
+        TermuxCommandBridge.Result r = new TermuxCommandBridge.Result();
+        r.exitCode = Integer.parseInt(returned[2]);
+        r.stdout = stdout.kept.toString();
+        r.stderr = stderr.kept.toString();
+        r.workingDirectory = returned.length > 3 ? returned[3] : "";
+        return r;
+    }
+
+    // Decodes one output stream chunk by chunk; a UTF-8 sequence split across two chunks is
+    // held back until the rest arrives. Keeps the first MAX_KEPT_CHARS for the final result.
+    private static final class Utf8Stream {
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final StringBuilder kept = new StringBuilder();
+        byte[] carry = new byte[0];
+
+        String decode(byte[] bytes) {
+            ByteBuffer in = ByteBuffer.allocate(carry.length + bytes.length);
+            in.put(carry);
+            in.put(bytes);
+            // Cast keeps the pre-API 28 Buffer.flip() signature on older devices.
+            ((Buffer) in).flip();
+            CharBuffer out = CharBuffer.allocate(in.remaining());
+            decoder.decode(in, out, false);
+            carry = new byte[in.remaining()];
+            in.get(carry);
+            ((Buffer) out).flip();
+            String text = out.toString();
+            int room = MAX_KEPT_CHARS - kept.length();
+            if (room > 0) kept.append(text, 0, Math.min(room, text.length()));
+            return text;
+        }
+    }
+
+    private boolean ensureConnected() throws InterruptedException {
+        if (closed) return false;
+        if (socket != null) return true;
+        long now = System.currentTimeMillis();
+        if (now < retryAt) return false;
+        try {
+            if (server == null) {
+                server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+                // close() may have run while it was opening.
+                if (closed) closeQuietly(server);
+            }
+            byte[] tokenBytes = new byte[16];
+            random.nextBytes(tokenBytes);
+            String token = hex(tokenBytes);
+            boolean launched = bridge.launchDetached(BASH_PATH, new String[]{
+                "-lc", HELPER_SCRIPT, "hitomi-session", String.valueOf(server.getLocalPort()), token
+            }, null);
+            if (!launched) throw new IOException("RunCommandService unavailable");
+            long acceptDeadline = now + ACCEPT_TIMEOUT_MS;
+            while (true) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                int waitMs = (int) Math.max(1L, acceptDeadline - System.currentTimeMillis());
+                server.setSoTimeout(Math.min(waitMs, POLL_MS));
+                Socket candidate;
+                try {
+                    candidate = server.accept();
+                } catch (SocketTimeoutException e) {
+                    if (System.currentTimeMillis() >= acceptDeadline) throw e;
+                    continue;
+                }
+                candidate.setSoTimeout(waitMs);
+                InputStream candidateIn = new BufferedInputStream(candidate.getInputStream());
+                in = candidateIn;
+                partialLine.reset();
+                String hello;
+                try {
+                    hello = readLine();
+                } catch (IOException e) {
+                    hello = "";
+                }
+                if (("HELLO " + token).equals(hello)) {
+                    socket = candidate;
+                    if (closed) closeQuietly(candidate);
+                    out = candidate.getOutputStream();
+                    return true;
+                }
+                // Something else on the device found the port; keep waiting for our helper.
+                in = null;
+                closeQuietly(candidate);
+            }
+        } catch (InterruptedException e) {
+            // Not the helper's fault, so no retry backoff.
+            disconnect();
+            throw e;
+        } catch (Exception e) {
+            Log.w(TAG, "Termux session unavailable: " + e.getMessage());
+            disconnect();
+            retryAt = System.currentTimeMillis() + RETRY_AFTER_FAILURE_MS;
+            return false;
+        }
+    }
+
+    private void setReadTimeout(long deadline) throws IOException {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0L) throw new SocketTimeoutException("Termux command deadline passed");
+        socket.setSoTimeout((int) Math.min(POLL_MS, remaining));
+    }
+
+    private String readLine() throws IOException {
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) throw new EOFException("Termux session closed");
+            partialLine.write(b);
+            if (partialLine.size() > MAX_LINE_BYTES) throw new IOException("Termux session frame too long");
+        }
+        String line = new String(partialLine.toByteArray(), StandardCharsets.UTF_8);
+        partialLine.reset();
+        return line;
+    }
+
+    private void disconnect() {
+        closeQuietly(socket);
+        socket = null;
+        in = null;
+        out = null;
+        partialLine.reset();
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) sb.append(String.format("%02x", b & 0xff));
+        return sb.toString();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
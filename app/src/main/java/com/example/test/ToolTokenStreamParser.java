@@ -0,0 +1,92 @@
+package ai.agent1c.hitomi;
+
+// Watches a reply as it streams in and reports each {{tool:...}} token the moment its
+// closing braces arrive, so the tool can start while the model is still writing.
+public final class ToolTokenStreamParser {
+    private static final int TEXT = 0;
+    private static final int OPEN = 1;
+    private static final int TOKEN = 2;
+    private static final int CLOSE = 3;
+    private static final int MAX_TOKEN_CHARS = 2048;
+
+    private final AndroidToolRegistry registry;
+    private final Listener listener;
+    private final StringBuilder token = new StringBuilder();
+    private int state = TEXT;
+    private int consumed = 0;
+
+    public interface Listener {
+        void onToolCall(AndroidToolRegistry.ToolCall call);
+    }
+
+    public ToolTokenStreamParser(AndroidToolRegistry registry, Listener listener) {
+        this.registry = registry;
+        this.listener = listener;
+    }
+
+    // Stream listeners hand over the whole reply so far; only the new suffix is scanned.
+    public void feed(String textSoFar) {
+        if (textSoFar == null) return;
+        int length = textSoFar.length();
+        if (length < consumed) {
+            state = TEXT;
+            consumed = 0;
+        }
+        for (int i = consumed; i < length; i++) {
+            step(textSoFar.charAt(i));
+        }
+        consumed = length;
+    }
+
+    private void step(char c) {
+        switch (state) {
+            case TEXT:
+                if (c == '{') state = OPEN;
+                break;
+            case OPEN:
+                if (c == '{') {
+                    token.setLength(0);
+                    state = TOKEN;
+                } else {
+                    state = TEXT;
+                }
+                break;
+            case TOKEN:
+                if (c == '}') {
+                    state = CLOSE;
+                } else {
+                    append(c);
+                }
+                break;
+            case CLOSE:
+                if (c == '}') {
+                    state = TEXT;
+                    emit();
+                } else {
+                    state = TOKEN;
+                    append('}');
+                    if (state == TOKEN) append(c);
+                }
+                break;
+            default:
+                state = TEXT;
+        }
+    }
+
+    private void append(char c) {
+        if (token.length() >= MAX_TOKEN_CHARS) {
+            // Not a tool token after all; go back to plain text.
+            token.setLength(0);
+            state = TEXT;
+            return;
+        }
+        token.append(c);
+    }
+
+    private void emit() {
+        String body = token.toString();
+        token.setLength(0);
+        AndroidToolRegistry.ToolCall call = registry.parseToken(body, 0, body.length());
+        if (call != null) listener.onToolCall(call);
+    }
+}
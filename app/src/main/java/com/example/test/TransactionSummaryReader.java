@@ -0,0 +1,249 @@
+package ai.agent1c.hitomi;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+// Reads getTransaction (jsonParsed) responses straight off the wire and keeps only what a
+// wallet summary needs: slot, block time, error, first signature and the wallet's pre/post
+// balance. Instructions, inner instructions and log messages are skipped, never built.
+public final class TransactionSummaryReader {
+    private final String walletAddress;
+
+    public TransactionSummaryReader(String walletAddress) {
+        this.walletAddress = walletAddress == null ? "" : walletAddress.trim();
+    }
+
+    // Fills results/errors by response id from either a batch array or a single response.
+    // Returns false when the node answered a batch with one id-less error (no batch support).
+    public boolean readResponses(InputStream stream, JSONObject[] results, Exception[] errors) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        try {
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) readResponse(reader, results, errors);
+                reader.endArray();
+                return true;
+            }
+            return readResponse(reader, results, errors);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private boolean readResponse(JsonReader reader, JSONObject[] results, Exception[] errors) throws IOException {
+        int id = -1;
+        JSONObject summary = null;
+        String error = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                id = reader.nextInt();
+            } else if ("result".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                summary = readTransaction(reader);
+            } else if ("error".equals(name) && reader.peek() != JsonToken.NULL) {
+                Object value = readValue(reader);
+                error = value instanceof JSONObject ? ((JSONObject) value).optString("message", "") : String.valueOf(value);
+                if (error.trim().isEmpty()) error = "Unknown Solana RPC error";
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (id < 0 || id >= results.length) return error == null;
+        if (error != null) {
+            errors[id] = new IllegalStateException(error.trim());
+        } else {
+            // A null result (transaction not found yet) becomes an empty object, like rpcResult().
+            results[id] = summary == null ? new JSONObject() : summary;
+        }
+        return true;
+    }
+
+    private JSONObject readTransaction(JsonReader reader) throws IOException {
+        long slot = 0L;
+        long blockTime = 0L;
+        Object err = null;
+        long[] pre = null;
+        long[] post = null;
+        String signature = "";
+        int walletIndex = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("slot".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                slot = reader.nextLong();
+            } else if ("blockTime".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                blockTime = reader.nextLong();
+            } else if ("meta".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if ("err".equals(field)) {
+                        err = readValue(reader);
+                    } else if ("preBalances".equals(field)) {
+                        pre = readLongs(reader);
+                    } else if ("postBalances".equals(field)) {
+                        post = readLongs(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if ("transaction".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if ("signatures".equals(field) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        if (reader.hasNext() && reader.peek() == JsonToken.STRING) signature = reader.nextString().trim();
+                        while (reader.hasNext()) reader.skipValue();
+                        reader.endArray();
+                    } else if ("message".equals(field) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        walletIndex = readWalletIndex(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        long netLamports = 0L;
+        if (walletIndex >= 0 && pre != null && post != null && walletIndex < pre.length && walletIndex < post.length) {
+            netLamports = post[walletIndex] - pre[walletIndex];
+        }
+        boolean ok = err == null || err == JSONObject.NULL;
+        JSONObject out = new JSONObject();
+        try {
+            out.put("signature", signature);
+            out.put("slot", slot);
+            out.put("blockTime", WalletLedgerStore.isoFromEpoch(blockTime));
+            out.put("confirmationStatus", ok ? "confirmed" : "failed");
+            out.put("ok", ok);
+            out.put("err", ok ? JSONObject.NULL : err);
+            out.put("memo", "");
+            out.put("netLamports", netLamports);
+            out.put("netSol", netLamports / 1_000_000_000d);
+        } catch (Exception ignored) {
+        }
+        return out;
+    }
+
+    // Index of the wallet in message.accountKeys; entries are {"pubkey": ...} or plain strings.
+    private int readWalletIndex(JsonReader reader) throws IOException {
+        int found = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"accountKeys".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            for (int i = 0; reader.hasNext(); i++) {
+                String key = "";
+                if (reader.peek() == JsonToken.STRING) {
+                    key = reader.nextString();
+                } else if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("pubkey".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                            key = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+                if (found < 0 && walletAddress.equals(key.trim())) found = i;
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return found;
+    }
+
+    private static long[] readLongs(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        long[] values = new long[16];
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (count == values.length) {
+                long[] grown = new long[count * 2];
+                System.arraycopy(values, 0, grown, 0, count);
+                values = grown;
+            }
+            values[count++] = reader.peek() == JsonToken.NUMBER ? reader.nextLong() : skipAsZero(reader);
+        }
+        reader.endArray();
+        long[] out = new long[count];
+        System.arraycopy(values, 0, out, 0, count);
+        return out;
+    }
+
+    private static long skipAsZero(JsonReader reader) throws IOException {
+        reader.skipValue();
+        return 0L;
+    }
+
+    // Small values only (transaction errors); builds the matching org.json value.
+    private static Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT: {
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    try {
+                        object.put(name, readValue(reader));
+                    } catch (Exception ignored) {
+                    }
+                }
+                reader.endObject();
+                return object;
+            }
+            case BEGIN_ARRAY: {
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) array.put(readValue(reader));
+                reader.endArray();
+                return array;
+            }
+            case STRING:
+                return reader.nextString();
+            case NUMBER: {
+                String number = reader.nextString();
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    return Double.parseDouble(number);
+                }
+            }
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                reader.skipValue();
+                return JSONObject.NULL;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package ai.agent1c.hitomi;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+// Per-wallet transaction ledger on disk. Rows are keyed by (address, signature) and read
+// newest-slot-first through an index, so paging and date totals never load the whole history.
+public final class WalletLedgerStore extends SQLiteOpenHelper {
+    private static final String DB_NAME = "hitomi_wallet_ledger.db";
+    private static final int DB_VERSION = 1;
+    private static final String T_WALLETS = "wallets";
+    private static final String T_TRANSACTIONS = "transactions";
+    // Stretches a refresh could not page all the way through; transactions in them are missing.
+    private static final String T_GAPS = "sync_gaps";
+    private static final String ISO_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+    private static WalletLedgerStore instance;
+
+    public static final class Totals {
+        public final int transactionCount;
+        public final int partialCount;
+        public final long netLamports;
+        public final long oldestBlockTime;
+        // Sync gaps reaching into the range; with any, the counts and net change are a floor.
+        public final int gapCount;
+        // Newer edge of the most recent such gap: the ledger is complete from here to now.
+        public final long completeSinceBlockTime;
+
+        Totals(int transactionCount, int partialCount, long netLamports, long oldestBlockTime,
+               int gapCount, long completeSinceBlockTime) {
+            this.transactionCount = transactionCount;
+            this.partialCount = partialCount;
+            this.netLamports = netLamports;
+            this.oldestBlockTime = oldestBlockTime;
+            this.gapCount = gapCount;
+            this.completeSinceBlockTime = completeSinceBlockTime;
+        }
+    }
+
+    public static synchronized WalletLedgerStore get(Context context) {
+        if (instance == null) instance = new WalletLedgerStore(context.getApplicationContext());
+        return instance;
+    }
+
+    private WalletLedgerStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + T_WALLETS + " ("
+            + "address TEXT PRIMARY KEY, "
+            + "chain TEXT NOT NULL, "
+            + "lamports INTEGER NOT NULL, "
+            + "fetched_at TEXT NOT NULL, "
+            + "balance_at TEXT NOT NULL, "
+            + "rpc_source TEXT NOT NULL)");
+        db.execSQL("CREATE TABLE " + T_TRANSACTIONS + " ("
+            + "address TEXT NOT NULL, "
+            + "signature TEXT NOT NULL, "
+            + "slot INTEGER NOT NULL, "
+            + "block_time INTEGER NOT NULL, "
+            + "confirmation_status TEXT NOT NULL, "
+            + "ok INTEGER NOT NULL, "
+            + "err TEXT, "
+            + "memo TEXT NOT NULL, "
+            + "net_lamports INTEGER NOT NULL, "
+            + "partial INTEGER NOT NULL, "
+            + "PRIMARY KEY (address, signature))");
+        db.execSQL("CREATE INDEX transactions_by_slot ON " + T_TRANSACTIONS + " (address, slot DESC)");
+        db.execSQL("CREATE INDEX transactions_by_time ON " + T_TRANSACTIONS + " (address, block_time)");
+        db.execSQL("CREATE TABLE " + T_GAPS + " ("
+            + "address TEXT NOT NULL, "
+            + "newer_slot INTEGER NOT NULL, "
+            + "older_slot INTEGER NOT NULL, "
+            + "newer_block_time INTEGER NOT NULL, "
+            + "older_block_time INTEGER NOT NULL, "
+            + "PRIMARY KEY (address, newer_slot))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+
+    public void saveSnapshot(SolanaWalletClient.WalletSnapshot snapshot) {
+        if (snapshot == null || snapshot.address.isEmpty()) return;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues wallet = new ContentValues();
+            wallet.put("address", snapshot.address);
+            wallet.put("chain", snapshot.chain);
+            wallet.put("lamports", snapshot.lamports);
+            wallet.put("fetched_at", snapshot.fetchedAt);
+            wallet.put("balance_at", snapshot.balanceAt);
+            wallet.put("rpc_source", snapshot.rpcSource);
+            db.insertWithOnConflict(T_WALLETS, null, wallet, SQLiteDatabase.CONFLICT_REPLACE);
+            SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + T_TRANSACTIONS
+                + " (address, signature, slot, block_time, confirmation_status, ok, err, memo, net_lamports, partial)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            JSONArray txs = snapshot.recentTransactions;
+            for (int i = 0; i < txs.length(); i++) {
+                JSONObject tx = txs.optJSONObject(i);
+                String signature = tx == null ? "" : tx.optString("signature", "").trim();
+                if (signature.isEmpty()) continue;
+                Object err = tx.opt("err");
+                insert.clearBindings();
+                insert.bindString(1, snapshot.address);
+                insert.bindString(2, signature);
+                insert.bindLong(3, tx.optLong("slot", 0L));
+                insert.bindLong(4, epochFromIso(tx.optString("blockTime", "")));
+                insert.bindString(5, tx.optString("confirmationStatus", ""));
+                insert.bindLong(6, tx.optBoolean("ok", true) ? 1 : 0);
+                if (err == null || err == JSONObject.NULL) insert.bindNull(7);
+                else insert.bindString(7, String.valueOf(err));
+                insert.bindString(8, tx.optString("memo", ""));
+                insert.bindLong(9, tx.optLong("netLamports", 0L));
+                insert.bindLong(10, tx.optBoolean("partial", false) ? 1 : 0);
+                insert.executeInsert();
+                if (tx.has("gapOlderSlot")) {
+                    // Everything strictly between this transaction and the older one is unsynced.
+                    ContentValues gap = new ContentValues();
+                    gap.put("address", snapshot.address);
+                    gap.put("newer_slot", tx.optLong("slot", 0L));
+                    gap.put("older_slot", tx.optLong("gapOlderSlot", 0L));
+                    gap.put("newer_block_time", epochFromIso(tx.optString("blockTime", "")));
+                    gap.put("older_block_time", epochFromIso(tx.optString("gapOlderBlockTime", "")));
+                    db.insertWithOnConflict(T_GAPS, null, gap, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Returns false when the wallet has never been refreshed, so there is no row to update.
+    // Leaves fetched_at alone: that is when the transactions were last synced.
+    public boolean updateBalance(String address, long lamports, String balanceAt) {
+        ContentValues values = new ContentValues();
+        values.put("lamports", lamports);
+        values.put("balance_at", balanceAt);
+        return getWritableDatabase().update(T_WALLETS, values, "address = ?", new String[] {address}) > 0;
+    }
+
+    // The wallet row plus its newest transactions, shaped like a fresh refresh result.
+    public SolanaWalletClient.WalletSnapshot loadSnapshot(String address, int recentLimit) {
+        SQLiteDatabase db = getReadableDatabase();
+        try (Cursor c = db.query(T_WALLETS, new String[] {"chain", "lamports", "fetched_at", "rpc_source", "balance_at"},
+            "address = ?", new String[] {address}, null, null, null)) {
+            if (!c.moveToFirst()) return null;
+            long lamports = c.getLong(1);
+            return new SolanaWalletClient.WalletSnapshot(
+                address,
+                c.getString(0),
+                lamports,
+                lamports / 1_000_000_000d,
+                c.getString(2),
+                c.getString(4),
+                c.getString(3),
+                page(address, 0L, recentLimit),
+                ""
+            );
+        }
+    }
+
+    // Newest first; pass the slot of the last row seen to get the next page.
+    public JSONArray page(String address, long beforeSlot, int limit) {
+        String selection = beforeSlot > 0L ? "address = ? AND slot < ?" : "address = ?";
+        String[] args = beforeSlot > 0L ? new String[] {address, String.valueOf(beforeSlot)} : new String[] {address};
+        JSONArray out = new JSONArray();
+        try (Cursor c = getReadableDatabase().query(T_TRANSACTIONS,
+            new String[] {"signature", "slot", "block_time", "confirmation_status", "ok", "err", "memo", "net_lamports", "partial"},
+            selection, args, null, null, "slot DESC, signature", String.valueOf(Math.max(1, limit)))) {
+            while (c.moveToNext()) {
+                JSONObject tx = new JSONObject();
+                long netLamports = c.getLong(7);
+                putJson(tx, "signature", c.getString(0));
+                putJson(tx, "slot", c.getLong(1));
+                putJson(tx, "blockTime", isoFromEpoch(c.getLong(2)));
+                putJson(tx, "confirmationStatus", c.getString(3));
+                putJson(tx, "ok", c.getInt(4) != 0);
+                putJson(tx, "err", c.isNull(5) ? JSONObject.NULL : c.getString(5));
+                putJson(tx, "memo", c.getString(6));
+                putJson(tx, "netLamports", netLamports);
+                putJson(tx, "netSol", netLamports / 1_000_000_000d);
+                if (c.getInt(8) != 0) putJson(tx, "partial", true);
+                out.put(tx);
+            }
+        }
+        return out;
+    }
+
+    public Totals totalsSince(String address, long sinceEpochSeconds) {
+        SQLiteDatabase db = getReadableDatabase();
+        String since = String.valueOf(Math.max(0L, sinceEpochSeconds));
+        int gapCount = 0;
+        long completeSince = 0L;
+        // A gap matters if its newer edge is inside the range; its missing transactions are
+        // older than that edge but may still be after since.
+        try (Cursor c = db.rawQuery("SELECT COUNT(*), COALESCE(MAX(newer_block_time), 0) FROM " + T_GAPS
+            + " WHERE address = ? AND newer_block_time >= ?", new String[] {address, since})) {
+            if (c.moveToFirst()) {
+                gapCount = c.getInt(0);
+                completeSince = c.getLong(1);
+            }
+        }
+        try (Cursor c = db.rawQuery("SELECT COUNT(*), COALESCE(SUM(partial), 0), COALESCE(SUM(net_lamports), 0),"
+            + " (SELECT MIN(block_time) FROM " + T_TRANSACTIONS + " WHERE address = ? AND block_time > 0)"
+            + " FROM " + T_TRANSACTIONS + " WHERE address = ? AND block_time >= ?",
+            new String[] {address, address, since})) {
+            if (!c.moveToFirst()) return new Totals(0, 0, 0L, 0L, gapCount, completeSince);
+            return new Totals(c.getInt(0), c.getInt(1), c.getLong(2), c.isNull(3) ? 0L : c.getLong(3), gapCount, completeSince);
+        }
+    }
+
+    public void clear() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.delete(T_TRANSACTIONS, null, null);
+        db.delete(T_GAPS, null, null);
+        db.delete(T_WALLETS, null, null);
+    }
+
+    static long epochFromIso(String value) {
+        if (value == null || value.trim().isEmpty()) return 0L;
+        try {
+            SimpleDateFormat fmt = new SimpleDateFormat(ISO_FORMAT, Locale.US);
+            fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+            Date date = fmt.parse(value.trim());
+            return date == null ? 0L : date.getTime() / 1000L;
+        } catch (Exception ignored) {
+            return 0L;
+        }
+    }
+
+    static String isoFromEpoch(long epochSeconds) {
+        if (epochSeconds <= 0L) return "";
+        SimpleDateFormat fmt = new SimpleDateFormat(ISO_FORMAT, Locale.US);
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return fmt.format(new Date(epochSeconds * 1000L));
+    }
+
+    private static void putJson(JSONObject obj, String key, Object value) {
+        try {
+            obj.put(key, value);
+        } catch (Exception ignored) {
+        }
+    }
+}
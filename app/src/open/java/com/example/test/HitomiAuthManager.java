@@ -11,6 +11,7 @@ public class HitomiAuthManager {
     private static final String PREFS = "agent1c_android_auth";
     private static final String K_DIRECT_API_KEY = "direct_api_key";
     private static final String K_LOCAL_ENDPOINT = "local_endpoint";
+    private static final String K_LOCAL_MODEL = "local_model";
 
     private final SharedPreferences prefs;
 
@@ -58,6 +59,16 @@ public class HitomiAuthManager {
         return prefs.getString(K_LOCAL_ENDPOINT, "").trim();
     }
 
+    public String getLocalModel() {
+        return prefs.getString(K_LOCAL_MODEL, "").trim();
+    }
+
+    public String getConnectionInput() {
+        if (!isUsingLocalEndpoint()) return getDirectApiKey();
+        String model = getLocalModel();
+        return model.isEmpty() ? getLocalEndpoint() : getLocalEndpoint() + " " + model;
+    }
+
     public boolean isUsingLocalEndpoint() {
         return !getLocalEndpoint().isEmpty();
     }
@@ -66,17 +77,30 @@ public class HitomiAuthManager {
         String value = input == null ? "" : input.trim();
         SharedPreferences.Editor editor = prefs.edit();
         if (looksLikeEndpoint(value)) {
-            editor.putString(K_LOCAL_ENDPOINT, normalizeEndpoint(value));
+            String endpoint = value;
+            String model = "";
+            int space = indexOfWhitespace(value);
+            if (space > 0) {
+                endpoint = value.substring(0, space);
+                model = value.substring(space).trim();
+            }
+            editor.putString(K_LOCAL_ENDPOINT, normalizeEndpoint(endpoint));
+            if (model.isEmpty()) {
+                editor.remove(K_LOCAL_MODEL);
+            } else {
+                editor.putString(K_LOCAL_MODEL, model);
+            }
             editor.remove(K_DIRECT_API_KEY);
         } else {
             editor.putString(K_DIRECT_API_KEY, value);
             editor.remove(K_LOCAL_ENDPOINT);
+            editor.remove(K_LOCAL_MODEL);
         }
         editor.apply();
     }
 
     public void signOut() {
-        prefs.edit().remove(K_DIRECT_API_KEY).remove(K_LOCAL_ENDPOINT).apply();
+        prefs.edit().remove(K_DIRECT_API_KEY).remove(K_LOCAL_ENDPOINT).remove(K_LOCAL_MODEL).apply();
     }
 
     public String buildWebAuthLaunchUrl(String provider) {
@@ -94,6 +118,13 @@ public class HitomiAuthManager {
         return trimmed.startsWith("http://") || trimmed.startsWith("https://");
     }
 
+    private static int indexOfWhitespace(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isWhitespace(value.charAt(i))) return i;
+        }
+        return -1;
+    }
+
     private static String normalizeEndpoint(String value) {
         String trimmed = value == null ? "" : value.trim();
         while (trimmed.endsWith("/")) {
@@ -0,0 +1,154 @@
+#!/usr/bin/env python3
+"""Offline stand-in for the chat providers Hitomi talks to.
+
+Serves an xAI-compatible POST /v1/chat/completions and an Ollama-compatible
+GET /api/tags + POST /api/chat. Streaming requests get one chunk per word
+(server-sent events for xAI, NDJSON for Ollama), so the streaming bubble
+can be exercised without network access, an API key or a model download.
+
+Point a debug build at the xAI route with:
+
+    ./gradlew assembleOpenDebug -PxaiChatUrl=http://10.0.2.2:8787/v1/chat/completions
+
+or enter http://10.0.2.2:8787 as the Ollama endpoint in Open Hitomi.
+(10.0.2.2 is the host loopback as seen from the Android emulator.)
+"""
+
+import argparse
+import json
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+DEFAULT_REPLY = (
+    "Hi fren! I'm the offline stand-in for Hitomi's chat provider. "
+    "Each word of this reply arrives as its own streamed chunk."
+)
+
+
+def words_of(text):
+    parts = text.split(" ")
+    return [p if i == len(parts) - 1 else p + " " for i, p in enumerate(parts)]
+
+
+class Handler(BaseHTTPRequestHandler):
+    protocol_version = "HTTP/1.1"
+
+    def log_message(self, fmt, *args):
+        if not self.server.quiet:
+            super().log_message(fmt, *args)
+
+    def read_json(self):
+        length = int(self.headers.get("Content-Length") or 0)
+        raw = self.rfile.read(length) if length else b"{}"
+        try:
+            return json.loads(raw.decode("utf-8"))
+        except ValueError:
+            return {}
+
+    def send_json(self, code, payload):
+        body = json.dumps(payload).encode("utf-8")
+        self.send_response(code)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
+    def do_GET(self):
+        if self.path.rstrip("/") != "/api/tags":
+            self.send_json(404, {"error": "unknown path " + self.path})
+            return
+        self.send_json(200, {"models": [{"name": self.server.model, "model": self.server.model}]})
+
+    def do_POST(self):
+        path = self.path.rstrip("/")
+        if path == "/api/chat":
+            self.ollama_chat()
+            return
+        if path != "/v1/chat/completions":
+            self.send_json(404, {"error": {"message": "unknown path " + self.path}})
+            return
+        request = self.read_json()
+        reply = self.server.reply
+        model = request.get("model", "standin")
+        time.sleep(self.server.first_delay)
+        if not request.get("stream"):
+            self.send_json(200, {
+                "id": "standin",
+                "model": model,
+                "choices": [{"index": 0, "message": {"role": "assistant", "content": reply}}],
+            })
+            return
+        self.send_response(200)
+        self.send_header("Content-Type", "text/event-stream")
+        self.send_header("Cache-Control", "no-cache")
+        self.send_header("Connection", "close")
+        self.end_headers()
+        for word in words_of(reply):
+            chunk = {
+                "id": "standin",
+                "model": model,
+                "choices": [{"index": 0, "delta": {"content": word}}],
+            }
+            self.wfile.write(("data: " + json.dumps(chunk) + "\n\n").encode("utf-8"))
+            self.wfile.flush()
+            time.sleep(self.server.chunk_delay)
+        self.wfile.write(b"data: [DONE]\n\n")
+        self.wfile.flush()
+        self.close_connection = True
+
+    def ollama_chat(self):
+        request = self.read_json()
+        model = request.get("model", "")
+        if model != self.server.model:
+            self.send_json(404, {"error": "model '%s' not found" % model})
+            return
+        reply = self.server.reply
+        time.sleep(self.server.first_delay)
+        if not request.get("stream", True):
+            self.send_json(200, {
+                "model": model,
+                "message": {"role": "assistant", "content": reply},
+                "done": True,
+            })
+            return
+        self.send_response(200)
+        self.send_header("Content-Type", "application/x-ndjson")
+        self.send_header("Connection", "close")
+        self.end_headers()
+        for word in words_of(reply):
+            chunk = {"model": model, "message": {"role": "assistant", "content": word}, "done": False}
+            self.wfile.write((json.dumps(chunk) + "\n").encode("utf-8"))
+            self.wfile.flush()
+            time.sleep(self.server.chunk_delay)
+        done = {"model": model, "message": {"role": "assistant", "content": ""}, "done": True}
+        self.wfile.write((json.dumps(done) + "\n").encode("utf-8"))
+        self.wfile.flush()
+        self.close_connection = True
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--host", default="0.0.0.0")
+    parser.add_argument("--port", type=int, default=8787)
+    parser.add_argument("--reply", default=DEFAULT_REPLY, help="text to answer every request with")
+    parser.add_argument("--model", default="standin:latest", help="model name reported by /api/tags")
+    parser.add_argument("--first-delay-ms", type=int, default=300, help="delay before the first byte")
+    parser.add_argument("--chunk-delay-ms", type=int, default=120, help="delay between streamed chunks")
+    parser.add_argument("--quiet", action="store_true")
+    args = parser.parse_args()
+
+    server = ThreadingHTTPServer((args.host, args.port), Handler)
+    server.reply = args.reply
+    server.model = args.model
+    server.first_delay = args.first_delay_ms / 1000.0
+    server.chunk_delay = args.chunk_delay_ms / 1000.0
+    server.quiet = args.quiet
+    print("chat stand-in listening on http://%s:%d" % (args.host, args.port))
+    try:
+        server.serve_forever()
+    except KeyboardInterrupt:
+        pass
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,288 @@
+#!/usr/bin/env python3
+"""Offline stand-in for the Solana JSON-RPC nodes the wallet tool talks to.
+
+Answers getBalance, getSignaturesForAddress and getTransaction, both as
+single calls and as JSON-RPC batch arrays, with made-up but consistent data
+for whatever address is asked about. WebSocket upgrades on the same port
+take accountSubscribe and logsSubscribe; with --notify-every-ms the node
+keeps "receiving" transactions and pushes them to subscribers. --latency-ms and --status make a node
+slow or broken, so hedged refreshes can be exercised by running two or three
+of these on different ports:
+
+    python3 scripts/solana-rpc-standin.py --port 8899 --latency-ms 5000
+    python3 scripts/solana-rpc-standin.py --port 8900
+    ./gradlew assembleOpenDebug -PsolanaRpcUrls=http://10.0.2.2:8899,http://10.0.2.2:8900
+
+(10.0.2.2 is the host loopback as seen from the Android emulator.)
+"""
+
+import argparse
+import base64
+import hashlib
+import json
+import socket
+import threading
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+LAMPORTS_PER_SOL = 1000000000
+BASE_BLOCK_TIME = 1767225600
+BASE_SLOT = 300000000
+WS_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11"
+
+
+def signature_for(address, index):
+    digest = hashlib.sha256(("%s:%d" % (address, index)).encode("utf-8")).hexdigest()
+    return "standin" + digest[:60]
+
+
+def ws_frame(opcode, payload):
+    head = bytes([0x80 | opcode])
+    if len(payload) < 126:
+        head += bytes([len(payload)])
+    elif len(payload) < 65536:
+        head += bytes([126]) + len(payload).to_bytes(2, "big")
+    else:
+        head += bytes([127]) + len(payload).to_bytes(8, "big")
+    return head + payload
+
+
+def ws_parse(buf):
+    """Returns ((opcode, payload), rest) or (None, buf) when no whole frame is buffered yet."""
+    if len(buf) < 2:
+        return None, buf
+    length = buf[1] & 0x7F
+    pos = 2
+    if length == 126:
+        if len(buf) < 4:
+            return None, buf
+        length = int.from_bytes(buf[2:4], "big")
+        pos = 4
+    elif length == 127:
+        if len(buf) < 10:
+            return None, buf
+        length = int.from_bytes(buf[2:10], "big")
+        pos = 10
+    masked = buf[1] & 0x80
+    mask = buf[pos:pos + 4] if masked else b"\0\0\0\0"
+    pos += 4 if masked else 0
+    if len(buf) < pos + length:
+        return None, buf
+    payload = bytes(b ^ mask[i % 4] for i, b in enumerate(buf[pos:pos + length]))
+    return (buf[0] & 0x0F, payload), buf[pos + length:]
+
+
+class Handler(BaseHTTPRequestHandler):
+    protocol_version = "HTTP/1.1"
+
+    def log_message(self, fmt, *args):
+        if not self.server.quiet:
+            super().log_message(fmt, *args)
+
+    def send_json(self, code, payload):
+        body = json.dumps(payload).encode("utf-8")
+        self.send_response(code)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(body)))
+        self.end_headers()
+        try:
+            self.wfile.write(body)
+        except (BrokenPipeError, ConnectionResetError):
+            # The client hedged to another node and hung up on this one.
+            self.close_connection = True
+
+    def do_GET(self):
+        if self.headers.get("Upgrade", "").lower() != "websocket":
+            self.send_json(404, {"error": "unknown path " + self.path})
+            return
+        key = self.headers.get("Sec-WebSocket-Key", "")
+        accept = base64.b64encode(hashlib.sha1((key + WS_GUID).encode("ascii")).digest()).decode("ascii")
+        self.send_response(101, "Switching Protocols")
+        self.send_header("Upgrade", "websocket")
+        self.send_header("Connection", "Upgrade")
+        self.send_header("Sec-WebSocket-Accept", accept)
+        self.end_headers()
+        self.close_connection = True
+        try:
+            self.serve_websocket()
+        except (BrokenPipeError, ConnectionResetError):
+            pass
+
+    def serve_websocket(self):
+        conn = self.connection
+        conn.settimeout(0.2)
+        subscriptions = {}
+        started = time.time()
+        next_push = started + self.server.notify_every
+        buf = b""
+        while True:
+            if self.server.ws_drop_after and time.time() - started >= self.server.ws_drop_after:
+                return
+            try:
+                chunk = conn.recv(4096)
+                if not chunk:
+                    return
+                buf += chunk
+            except socket.timeout:
+                pass
+            while True:
+                frame, buf = ws_parse(buf)
+                if frame is None:
+                    break
+                opcode, payload = frame
+                if opcode == 0x8:
+                    conn.sendall(ws_frame(0x8, b""))
+                    return
+                if opcode == 0x9:
+                    conn.sendall(ws_frame(0xA, payload))
+                elif opcode == 0x1:
+                    conn.sendall(ws_frame(0x1, json.dumps(self.subscribe(json.loads(payload), subscriptions)).encode("utf-8")))
+            if self.server.notify_every and subscriptions and time.time() >= next_push:
+                next_push = time.time() + self.server.notify_every
+                self.push_transaction(conn, subscriptions)
+
+    def subscribe(self, call, subscriptions):
+        method = call.get("method", "")
+        params = call.get("params") or []
+        if not self.server.quiet:
+            print("  ws %s" % method)
+        if method in ("accountSubscribe", "logsSubscribe"):
+            address = params[0] if method == "accountSubscribe" else (params[0] or {}).get("mentions", [""])[0]
+            sub_id = len(subscriptions) + 1
+            subscriptions[sub_id] = (method, address)
+            return {"jsonrpc": "2.0", "id": call.get("id"), "result": sub_id}
+        if method in ("accountUnsubscribe", "logsUnsubscribe"):
+            return {"jsonrpc": "2.0", "id": call.get("id"), "result": subscriptions.pop(params[0], None) is not None}
+        return {"jsonrpc": "2.0", "id": call.get("id"), "error": {"code": -32601, "message": "Method not found"}}
+
+    def push_transaction(self, conn, subscriptions):
+        with self.server.lock:
+            n = self.server.transactions
+            self.server.transactions += 1
+            self.server.lamports += (n + 1) * 1000 * (1 if n % 2 == 0 else -1)
+            lamports = self.server.lamports
+        for sub_id, (method, address) in subscriptions.items():
+            context = {"slot": BASE_SLOT + n}
+            if method == "accountSubscribe":
+                note = {"jsonrpc": "2.0", "method": "accountNotification", "params": {"subscription": sub_id, "result": {
+                    "context": context,
+                    "value": {"lamports": lamports, "owner": "11111111111111111111111111111111",
+                              "data": ["", "base64"], "executable": False, "rentEpoch": 0}}}}
+            else:
+                note = {"jsonrpc": "2.0", "method": "logsNotification", "params": {"subscription": sub_id, "result": {
+                    "context": context,
+                    "value": {"signature": signature_for(address, n), "err": None, "logs": []}}}}
+            conn.sendall(ws_frame(0x1, json.dumps(note).encode("utf-8")))
+
+    def do_POST(self):
+        length = int(self.headers.get("Content-Length") or 0)
+        raw = self.rfile.read(length) if length else b""
+        time.sleep(self.server.latency)
+        if self.server.status != 200:
+            self.send_json(self.server.status, {"error": "stand-in answering %d" % self.server.status})
+            return
+        try:
+            request = json.loads(raw.decode("utf-8"))
+        except ValueError:
+            self.send_json(200, {"jsonrpc": "2.0", "id": None, "error": {"code": -32700, "message": "Parse error"}})
+            return
+        if isinstance(request, list):
+            if self.server.no_batch:
+                self.send_json(200, {"jsonrpc": "2.0", "id": None,
+                                     "error": {"code": -32600, "message": "Batch requests are not supported"}})
+                return
+            self.send_json(200, [self.answer(call) for call in request])
+            return
+        self.send_json(200, self.answer(request))
+
+    def answer(self, call):
+        method = call.get("method", "")
+        params = call.get("params") or []
+        response = {"jsonrpc": "2.0", "id": call.get("id")}
+        if not self.server.quiet:
+            print("  %s %s" % (method, json.dumps(params[1:]) if len(params) > 1 else ""))
+        handler = getattr(self, "rpc_" + method, None)
+        if handler is None:
+            response["error"] = {"code": -32601, "message": "Method not found"}
+        else:
+            response["result"] = handler(params)
+        return response
+
+    def rpc_getBalance(self, params):
+        return {"context": {"slot": BASE_SLOT}, "value": self.server.lamports}
+
+    def rpc_getSignaturesForAddress(self, params):
+        address = params[0] if params else ""
+        options = params[1] if len(params) > 1 else {}
+        until = options.get("until")
+        out = []
+        # Sequence numbers count up from the oldest transaction; the list is newest first.
+        for n in range(self.server.transactions - 1, -1, -1):
+            if len(out) >= int(options.get("limit", 1000)):
+                break
+            signature = signature_for(address, n)
+            if signature == until:
+                break
+            self.server.issued[signature] = (address, n)
+            out.append({
+                "signature": signature,
+                "slot": BASE_SLOT + n,
+                "blockTime": BASE_BLOCK_TIME + n * 60,
+                "confirmationStatus": "finalized",
+                "err": None,
+                "memo": None,
+            })
+        return out
+
+    def rpc_getTransaction(self, params):
+        signature = params[0] if params else ""
+        if signature not in self.server.issued:
+            return None
+        address, n = self.server.issued[signature]
+        change = (n + 1) * 1000 * (1 if n % 2 == 0 else -1)
+        return {
+            "slot": BASE_SLOT + n,
+            "blockTime": BASE_BLOCK_TIME + n * 60,
+            "meta": {"err": None, "preBalances": [self.server.lamports - change, 0],
+                     "postBalances": [self.server.lamports, 0]},
+            "transaction": {"signatures": [signature],
+                            "message": {"accountKeys": [{"pubkey": address}, {"pubkey": "11111111111111111111111111111111"}]}},
+        }
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("--host", default="0.0.0.0")
+    parser.add_argument("--port", type=int, default=8899)
+    parser.add_argument("--latency-ms", type=int, default=0, help="delay before every response")
+    parser.add_argument("--status", type=int, default=200, help="HTTP status to answer with, e.g. 503")
+    parser.add_argument("--no-batch", action="store_true", help="reject JSON-RPC batch arrays")
+    parser.add_argument("--sol", type=float, default=1.5, help="balance reported for every address")
+    parser.add_argument("--transactions", type=int, default=10, help="number of recent transactions")
+    parser.add_argument("--notify-every-ms", type=int, default=0,
+                        help="over WebSocket, push a new transaction and balance change this often")
+    parser.add_argument("--ws-drop-after-ms", type=int, default=0,
+                        help="hang up WebSocket clients after this long, to exercise reconnects")
+    parser.add_argument("--quiet", action="store_true")
+    args = parser.parse_args()
+
+    server = ThreadingHTTPServer((args.host, args.port), Handler)
+    server.latency = args.latency_ms / 1000.0
+    server.status = args.status
+    server.no_batch = args.no_batch
+    server.lamports = int(args.sol * LAMPORTS_PER_SOL)
+    server.transactions = max(0, args.transactions)
+    server.issued = {}
+    server.lock = threading.Lock()
+    server.notify_every = args.notify_every_ms / 1000.0
+    server.ws_drop_after = args.ws_drop_after_ms / 1000.0
+    server.quiet = args.quiet
+    print("solana rpc stand-in listening on http://%s:%d" % (args.host, args.port))
+    try:
+        server.serve_forever()
+    except KeyboardInterrupt:
+        pass
+
+
+if __name__ == "__main__":
+    main()